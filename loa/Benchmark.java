@@ -0,0 +1,230 @@
+package loa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Throughput benchmarks for the loa package.  Run as
+ *      java loa.Benchmark [NAME ...]
+ *  where each NAME selects one benchmark (by default, movegen, perft and
+ *  smp).  The self-play matches nullmove, lmr and solver, which take some
+ *  minutes, run only when named.
+ *  @author Tara Calista
+ */
+class Benchmark {
+
+    /** Run the benchmarks named in ARGS, or all of them if ARGS is
+     *  empty. */
+    public static void main(String... args) {
+        if (args.length == 0) {
+            args = new String[] { "movegen", "perft", "smp" };
+        }
+        for (String name : args) {
+            switch (name) {
+            case "movegen":
+                moveGeneration();
+                break;
+            case "perft":
+                new Perft(new Board()).report(5, false, System.out);
+                break;
+            case "smp":
+                smpScaling();
+                break;
+            case "nullmove":
+                EngineConfig withNull = unreduced();
+                withNull.nullMove = true;
+                selfPlay("nullmove", withNull, unreduced());
+                break;
+            case "lmr":
+                EngineConfig withLmr = unreduced();
+                withLmr.lateMoveReductions = true;
+                selfPlay("lmr", withLmr, unreduced());
+                break;
+            case "solver":
+                EngineConfig withSolver = unreduced();
+                withSolver.solver = true;
+                selfPlay("solver", withSolver, unreduced());
+                break;
+            default:
+                System.err.printf("unknown benchmark: %s%n", name);
+                System.exit(1);
+            }
+        }
+    }
+
+    /** Number of seeded random games from which sample positions are
+     *  taken. */
+    static final int SAMPLE_GAMES = 200;
+
+    /** Return the positions reached in SAMPLE_GAMES random games
+     *  (seeded deterministically), one Board per position. */
+    static List<Board> samplePositions() {
+        List<Board> result = new ArrayList<>();
+        List<Move> moves = new ArrayList<>();
+        for (int g = 0; g < SAMPLE_GAMES; g += 1) {
+            Random random = new Random(g);
+            Board board = new Board();
+            while (!board.gameOver()) {
+                result.add(new Board(board));
+                moves.clear();
+                for (Move move : board) {
+                    moves.add(move);
+                }
+                if (moves.isEmpty()) {
+                    break;
+                }
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+        }
+        return result;
+    }
+
+    /** Time legal-move generation over the sample positions, through
+     *  both the Iterable interface and generateMoves, and report its
+     *  throughput. */
+    static void moveGeneration() {
+        List<Board> positions = samplePositions();
+        final int rounds = 20, warmup = 5;
+        int[] buf = new int[Board.MAX_MOVES];
+        for (int pass = 0; pass < 2; pass += 1) {
+            long moves, start;
+            moves = start = 0;
+            for (int i = 0; i < warmup + rounds; i += 1) {
+                if (i == warmup) {
+                    moves = 0;
+                    start = System.nanoTime();
+                }
+                for (Board board : positions) {
+                    if (pass == 0) {
+                        for (Move move : board) {
+                            moves += 1;
+                        }
+                    } else {
+                        moves += board.generateMoves(buf);
+                    }
+                }
+            }
+            double secs = (System.nanoTime() - start) * 1e-9;
+            System.out.printf("movegen (%s): %d positions x %d rounds, "
+                              + "%.0f positions/s, %.0f moves/s%n",
+                              pass == 0 ? "iterator" : "buffer",
+                              positions.size(), rounds,
+                              positions.size() * rounds / secs,
+                              moves / secs);
+        }
+    }
+
+    /** Thread counts tried by smpScaling. */
+    static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+    /** Depth to which smpScaling searches. */
+    static final int SMP_DEPTH = 7;
+
+    /** Number of positions searched by smpScaling. */
+    static final int SMP_POSITIONS = 8;
+
+    /** For each number of threads in THREADS, time LazySmp searches to
+     *  SMP_DEPTH of SMP_POSITIONS sample positions, each with a fresh
+     *  table, and report the total time to depth and nodes per second. */
+    static void smpScaling() {
+        List<Board> sample = samplePositions();
+        List<Board> positions = new ArrayList<>();
+        for (int i = 0; i < SMP_POSITIONS; i += 1) {
+            positions.add(sample.get((i * 7919 + 10) % sample.size()));
+        }
+        System.out.printf("smp: %d positions to depth %d on %d processors%n",
+                          positions.size(), SMP_DEPTH,
+                          Runtime.getRuntime().availableProcessors());
+        double base = 0;
+        for (Board board : positions) {
+            EngineConfig warmup = new EngineConfig();
+            warmup.moveTime = 0;
+            warmup.maxDepth = SMP_DEPTH - 1;
+            new Search(warmup).bestMove(board);
+        }
+        for (int threads : THREADS) {
+            EngineConfig config = new EngineConfig();
+            config.moveTime = 0;
+            config.maxDepth = SMP_DEPTH;
+            config.threads = threads;
+            long nodes = 0, start = System.nanoTime();
+            for (Board board : positions) {
+                LazySmp search =
+                    new LazySmp(config, new TranspositionTable(32));
+                search.bestMove(board);
+                nodes += search.nodes();
+                search.shutdown();
+            }
+            double secs = (System.nanoTime() - start) * 1e-9;
+            if (threads == 1) {
+                base = secs;
+            }
+            System.out.printf("  %2d threads: %7.3f s to depth (x%.2f), "
+                              + "%.0f nodes/s%n", threads, secs, base / secs,
+                              nodes / secs);
+        }
+    }
+
+    /** Number of games in a self-play match. */
+    static final int MATCH_GAMES = 200;
+
+    /** Search nodes per move in a match.  A node budget, unlike a time
+     *  budget, makes every game repeatable. */
+    static final long MATCH_NODES = 10000;
+
+    /** Size of each side's transposition table in a match, in
+     *  megabytes. */
+    static final int MATCH_HASH = 4;
+
+    /** Return a configuration for match games with no selective search
+     *  and no endgame solver. */
+    static EngineConfig unreduced() {
+        EngineConfig config = new EngineConfig();
+        config.moveTime = 0;
+        config.moveNodes = MATCH_NODES;
+        config.hashMegabytes = MATCH_HASH;
+        config.nullMove = false;
+        config.lateMoveReductions = false;
+        config.solver = false;
+        return config;
+    }
+
+    /** Play MATCH_GAMES games between engines configured by TEST and by
+     *  BASE, and report the result for TEST under the title NAME.  The
+     *  games are played as Tournament plays them (see
+     *  Tournament.playGame): each pair starts from the same random
+     *  opening, with TEST taking each side once, and a side whose
+     *  configuration enables the solver tries it first, as a
+     *  MachinePlayer does.  Unlike a Tournament, the match always plays
+     *  all its games. */
+    static void selfPlay(String name, EngineConfig test, EngineConfig base) {
+        Tournament.Entrant testEntrant =
+            new Tournament.Entrant(name, test, false),
+            baseEntrant = new Tournament.Entrant("base", base, false);
+        int wins, losses, draws;
+        wins = losses = draws = 0;
+        for (int g = 0; g < MATCH_GAMES; g += 1) {
+            Piece testSide = g % 2 == 0 ? Piece.BP : Piece.WP;
+            int[] game =
+                Tournament.playGame(testSide == Piece.BP ? testEntrant
+                                    : baseEntrant,
+                                    testSide == Piece.BP ? baseEntrant
+                                    : testEntrant,
+                                    new Random(g / 2), g);
+            Piece winner = BookBuilder.winner(game);
+            if (winner == null) {
+                draws += 1;
+            } else if (winner == testSide) {
+                wins += 1;
+            } else {
+                losses += 1;
+            }
+        }
+        double score = (wins + 0.5 * draws) / MATCH_GAMES;
+        System.out.printf("%s: +%d -%d =%d in %d games at %d nodes/move, "
+                          + "score %.1f%%, Elo %+.0f%n", name, wins, losses,
+                          draws, MATCH_GAMES, MATCH_NODES, 100 * score,
+                          Tournament.elo(score));
+    }
+
+}
@@ -11,16 +11,27 @@
 package loa;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Formatter;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static loa.Piece.*;
 import static loa.Direction.*;
 
 /** Represents the state of a game of Lines of Action.
+ *
+ *  Thread confinement: all position state and all scratch space used
+ *  while answering queries belong to the individual Board, and nothing
+ *  mutable is shared between Boards.  A Board is not itself thread-safe,
+ *  so each Board must be used by one thread at a time (handing it to
+ *  another thread through an executor or other synchronizing hand-off is
+ *  fine).  Threads that search the same position should each work on
+ *  their own copy made with Board(Board) or copyFrom.
  *  @author Tara Calista
  */
 class Board implements Iterable<Move> {
@@ -49,24 +60,75 @@ class Board implements Iterable<Move> {
         clear();
     }
 
+    /** A Board set up as described by POSITION (see initialize(String)). */
+    Board(String position) {
+        initialize(position);
+    }
+
     /** A Board whose initial contents and state are copied from
      *  BOARD. */
     Board(Board board) {
         copyFrom(board);
     }
 
-    /** Large prime. */
-    static final int G = 1000000007;
-
     /** Set my state to CONTENTS with SIDE to move. */
     void initialize(Piece[][] contents, Piece side) {
         _moves.clear();
+        _black = _white = 0L;
+        _key = 0L;
+        _turn = BP;
+        Arrays.fill(_rowCount, 0);
+        Arrays.fill(_colCount, 0);
+        Arrays.fill(_diagCount, 0);
+        Arrays.fill(_antiCount, 0);
+        for (int p = 0; p < 2; p += 1) {
+            Arrays.fill(_quads[p], (byte) 0);
+            _euler[p] = _colSum[p] = _rowSum[p] = _squareSum[p] = 0;
+        }
         for (int r = 1; r <= M; r += 1) {
             for (int c = 1; c <= M; c += 1) {
                 set(c, r, contents[r - 1][c - 1]);
             }
         }
-        _turn = side;
+        setTurn(side);
+    }
+
+    /** Pattern describing a position in one-line form: the contents of
+     *  rows 8 down to 1, separated by '/', each giving columns a-h as 'b'
+     *  (black), 'w' (white) or '-' (empty), then whitespace and the side
+     *  to move ('b' or 'w').  For example, the initial position is
+     *  -bbbbbb-/w------w/w------w/w------w/w------w/w------w/w------w/
+     *  -bbbbbb- b  (without the line break). */
+    static final Pattern POSITION =
+        Pattern.compile("([-bw]{8}(?:/[-bw]{8}){7})\\s+([bw])");
+
+    /** Set my state to the one-line POSITION, as described at POSITION. */
+    void initialize(String position) {
+        Matcher m = POSITION.matcher(position.trim());
+        if (!m.matches()) {
+            throw new IllegalArgumentException("bad position: " + position);
+        }
+        Piece[][] contents = new Piece[M][M];
+        String[] rows = m.group(1).split("/");
+        for (int r = 1; r <= M; r += 1) {
+            for (int c = 1; c <= M; c += 1) {
+                char p = rows[M - r].charAt(c - 1);
+                contents[r - 1][c - 1] = p == 'b' ? BP : p == 'w' ? WP : EMP;
+            }
+        }
+        initialize(contents, m.group(2).equals("b") ? BP : WP);
+    }
+
+    /** Return my position in the one-line form described at POSITION. */
+    String position() {
+        StringBuilder result = new StringBuilder();
+        for (int r = M; r >= 1; r -= 1) {
+            for (int c = 1; c <= M; c += 1) {
+                result.append(get(c, r).abbrev());
+            }
+            result.append(r > 1 ? "/" : " ");
+        }
+        return result.append(_turn.abbrev()).toString();
     }
 
     /** Set me to the initial configuration. */
@@ -74,7 +136,8 @@ class Board implements Iterable<Move> {
         initialize(INITIAL_PIECES, BP);
     }
 
-    /** Set my state to a copy of BOARD. */
+    /** Set my state to a copy of BOARD.  Afterwards, the two Boards share
+     *  no mutable state. */
     void copyFrom(Board board) {
         if (board == this) {
             return;
@@ -82,14 +145,66 @@ class Board implements Iterable<Move> {
         _moves.clear();
         _moves.addAll(board._moves);
         _turn = board._turn;
-        this.initialize(board.boardArr, board._turn);
+        _black = board._black;
+        _white = board._white;
+        _key = board._key;
+        System.arraycopy(board._rowCount, 0, _rowCount, 0, M);
+        System.arraycopy(board._colCount, 0, _colCount, 0, M);
+        System.arraycopy(board._diagCount, 0, _diagCount, 0, 2 * M - 1);
+        System.arraycopy(board._antiCount, 0, _antiCount, 0, 2 * M - 1);
+        for (int p = 0; p < 2; p += 1) {
+            System.arraycopy(board._quads[p], 0, _quads[p], 0, QUADS);
+        }
+        System.arraycopy(board._euler, 0, _euler, 0, 2);
+        System.arraycopy(board._colSum, 0, _colSum, 0, 2);
+        System.arraycopy(board._rowSum, 0, _rowSum, 0, 2);
+        System.arraycopy(board._squareSum, 0, _squareSum, 0, 2);
     }
 
     /** Return the contents of column C, row R, where 1 <= C,R <= 8,
      *  where column 1 corresponds to column 'a' in the standard
      *  notation. */
     Piece get(int c, int r) {
-        return this.boardArr[r - 1][c - 1];
+        return get(sq(c, r));
+    }
+
+    /** Return the contents of square index SQ (as for sq(int, int)). */
+    Piece get(int sq) {
+        long b = 1L << sq;
+        if ((_black & b) != 0) {
+            return BP;
+        } else if ((_white & b) != 0) {
+            return WP;
+        } else {
+            return EMP;
+        }
+    }
+
+    /** Return the square index, 0 <= index < M * M, of column C, row R.
+     *  Bit (1L << index) of an occupancy mask describes that square:
+     *  a1 is bit 0, h1 is bit 7, and h8 is bit 63. */
+    static int sq(int c, int r) {
+        return (r - 1) * M + c - 1;
+    }
+
+    /** Return the column (1--8) of square index SQ. */
+    static int col(int sq) {
+        return sq % M + 1;
+    }
+
+    /** Return the row (1--8) of square index SQ. */
+    static int row(int sq) {
+        return sq / M + 1;
+    }
+
+    /** Return the occupancy mask of SIDE's pieces (BP or WP). */
+    long pieces(Piece side) {
+        return side == BP ? _black : _white;
+    }
+
+    /** Return the mask of all occupied squares. */
+    long occupied() {
+        return _black | _white;
     }
 
     /** Return the contents of the square SQ.  SQ must be the
@@ -126,10 +241,51 @@ class Board implements Iterable<Move> {
         if (next != BP && next != WP && next != EMP && next != null) {
             throw new IllegalArgumentException("no such ending piece.");
         }
-        this.boardArr[r - 1][c - 1] = v;
+        int k = sq(c, r);
+        long b = 1L << k;
+        if ((_black & b) != 0) {
+            _key ^= ZOBRIST[BP.ordinal()][k];
+            place(BP.ordinal(), k, -1);
+        } else if ((_white & b) != 0) {
+            _key ^= ZOBRIST[WP.ordinal()][k];
+            place(WP.ordinal(), k, -1);
+        }
+        if (v != EMP) {
+            _key ^= ZOBRIST[v.ordinal()][k];
+            place(v.ordinal(), k, 1);
+        }
+        if (((_black | _white) & b) != 0) {
+            count(c, r, -1);
+        }
+        if (v != EMP) {
+            count(c, r, 1);
+        }
+        _black &= ~b;
+        _white &= ~b;
+        if (v == BP) {
+            _black |= b;
+        } else if (v == WP) {
+            _white |= b;
+        }
         if (next != null) {
-            _turn = next;
+            setTurn(next);
+        }
+    }
+
+    /** Give the move to the other side without moving a piece, as for a
+     *  null move in a search.  This is not a legal move in the game, and
+     *  is not recorded for retract(); calling passTurn again undoes it. */
+    void passTurn() {
+        _turn = _turn.opposite();
+        _key ^= SIDE_KEY;
+    }
+
+    /** Make SIDE the next side to move, keeping key() up to date. */
+    private void setTurn(Piece side) {
+        if ((_turn == WP) != (side == WP)) {
+            _key ^= SIDE_KEY;
         }
+        _turn = side;
     }
 
     /** Set the square at column C, row R to V. */
@@ -137,32 +293,129 @@ class Board implements Iterable<Move> {
         set(c, r, v, null);
     }
 
+    /** Add K to the counts of pieces on each line of action through
+     *  column C, row R. */
+    private void count(int c, int r, int k) {
+        _rowCount[r - 1] += k;
+        _colCount[c - 1] += k;
+        _diagCount[c - r + M - 1] += k;
+        _antiCount[c + r - 2] += k;
+    }
+
+    /** Add (if SIGN is 1) or remove (if SIGN is -1) a piece of the side
+     *  with ordinal SIDE on the square with index K in the quad patterns
+     *  and coordinate sums of that side. */
+    private void place(int side, int k, int sign) {
+        byte[] quads = _quads[side];
+        int[] corners = QUAD_OF[k];
+        int euler = _euler[side];
+        for (int i = 0; i < 4; i += 1) {
+            int q = corners[i];
+            int old = quads[q], now = old ^ (1 << i);
+            euler += QUAD_EULER[now] - QUAD_EULER[old];
+            quads[q] = (byte) now;
+        }
+        _euler[side] = euler;
+        int c = (k & (M - 1)) + 1, r = (k >>> 3) + 1;
+        _colSum[side] += sign * c;
+        _rowSum[side] += sign * r;
+        _squareSum[side] += sign * (c * c + r * r);
+    }
+
+    /** Return the Euler number (the number of groups less the number of
+     *  holes) of SIDE's pieces, where pieces in a group touch
+     *  orthogonally or diagonally and a hole is a group of empty squares
+     *  they surround.  Since pieces rarely surround anything, this is a
+     *  good estimate of the number of groups, and costs only a read. */
+    int eulerNumber(Piece side) {
+        return _euler[side.ordinal()] / 4;
+    }
+
+    /** Return the sum of the columns (1--8) of SIDE's pieces. */
+    int columnSum(Piece side) {
+        return _colSum[side.ordinal()];
+    }
+
+    /** Return the sum of the rows (1--8) of SIDE's pieces. */
+    int rowSum(Piece side) {
+        return _rowSum[side.ordinal()];
+    }
+
+    /** Return the sum over SIDE's pieces of the squares of their columns
+     *  and rows, from which (with columnSum and rowSum) the spread of the
+     *  pieces about their centre of mass follows. */
+    int squareSum(Piece side) {
+        return _squareSum[side.ordinal()];
+    }
+
     /** Assuming isLegal(MOVE), make MOVE. */
     void makeMove(Move move) {
         assert isLegal(move);
         _moves.add(move);
-        Piece replaced = move.replacedPiece();
-        int c0 = move.getCol0(), c1 = move.getCol1();
-        int r0 = move.getRow0(), r1 = move.getRow1();
+        count(move.getCol0(), move.getRow0(), -1);
+        if (move.replacedPiece() == EMP) {
+            count(move.getCol1(), move.getRow1(), 1);
+        }
+        int k0 = sq(move.getCol0(), move.getRow0());
+        int k1 = sq(move.getCol1(), move.getRow1());
+        long from = 1L << k0, to = 1L << k1;
+        Piece moved = move.movedPiece(), replaced = move.replacedPiece();
+        _key ^= ZOBRIST[moved.ordinal()][k0] ^ ZOBRIST[moved.ordinal()][k1]
+            ^ SIDE_KEY;
+        place(moved.ordinal(), k0, -1);
+        place(moved.ordinal(), k1, 1);
         if (replaced != EMP) {
-            set(c1, r1, EMP);
+            _key ^= ZOBRIST[replaced.ordinal()][k1];
+            place(replaced.ordinal(), k1, -1);
+        }
+        if (moved == BP) {
+            _black ^= from | to;
+            _white &= ~to;
+        } else {
+            _white ^= from | to;
+            _black &= ~to;
         }
-        set(c1, r1, move.movedPiece());
-        set(c0, r0, EMP);
         _turn = _turn.opposite();
     }
 
+    /** Assuming it is legal, make the move whose code is CODE. */
+    void makeMove(int code) {
+        makeMove(Move.decode(code));
+    }
+
     /** Retract (unmake) one move, returning to the state immediately before
      *  that move.  Requires that movesMade () > 0. */
     void retract() {
         assert movesMade() > 0;
         Move move = _moves.remove(_moves.size() - 1);
-        Piece replaced = move.replacedPiece();
-        int c0 = move.getCol0(), c1 = move.getCol1();
-        int r0 = move.getRow0(), r1 = move.getRow1();
-        Piece movedPiece = move.movedPiece();
-        set(c1, r1, replaced);
-        set(c0, r0, movedPiece);
+        count(move.getCol0(), move.getRow0(), 1);
+        if (move.replacedPiece() == EMP) {
+            count(move.getCol1(), move.getRow1(), -1);
+        }
+        int k0 = sq(move.getCol0(), move.getRow0());
+        int k1 = sq(move.getCol1(), move.getRow1());
+        long from = 1L << k0, to = 1L << k1;
+        Piece moved = move.movedPiece(), replaced = move.replacedPiece();
+        boolean capture = replaced != EMP;
+        _key ^= ZOBRIST[moved.ordinal()][k0] ^ ZOBRIST[moved.ordinal()][k1]
+            ^ SIDE_KEY;
+        place(moved.ordinal(), k1, -1);
+        place(moved.ordinal(), k0, 1);
+        if (capture) {
+            _key ^= ZOBRIST[replaced.ordinal()][k1];
+            place(replaced.ordinal(), k1, 1);
+        }
+        if (moved == BP) {
+            _black ^= from | to;
+            if (capture) {
+                _white |= to;
+            }
+        } else {
+            _white ^= from | to;
+            if (capture) {
+                _black |= to;
+            }
+        }
         _turn = _turn.opposite();
     }
 
@@ -182,6 +435,57 @@ class Board implements Iterable<Move> {
         return ((count == count2) && !blocked(move));
     }
 
+    /** Upper bound on the number of legal moves in any position: at most
+     *  8 per piece. */
+    static final int MAX_MOVES = 8 * M * M;
+
+    /** Store the legal moves from this position in BUF, which must have
+     *  room for MAX_MOVES entries, and return how many there are.  Moves
+     *  are listed by increasing square index of the moving piece, and
+     *  for each piece in the order N, NE, E, SE, S, SW, W, NW.  Each is
+     *  stored as its code (see Move.encode).  Allocates nothing. */
+    int generateMoves(int[] buf) {
+        long own = pieces(_turn), opp = pieces(_turn.opposite());
+        int quiet = Move.encode(0, 0, _turn, EMP);
+        int capture = Move.encode(0, 0, _turn, _turn.opposite());
+        int n = 0;
+        for (long p = own; p != 0; p &= p - 1) {
+            int from = Long.numberOfTrailingZeros(p);
+            int c = from % M, r = from / M;
+            for (int d = 0; d < DIR_COL.length; d += 1) {
+                int k;
+                switch (d & 3) {
+                case 0:
+                    k = _colCount[c];
+                    break;
+                case 1:
+                    k = _diagCount[c - r + M - 1];
+                    break;
+                case 2:
+                    k = _rowCount[r];
+                    break;
+                default:
+                    k = _antiCount[c + r];
+                    break;
+                }
+                int c1 = c + DIR_COL[d] * k, r1 = r + DIR_ROW[d] * k;
+                if (c1 < 0 || c1 >= M || r1 < 0 || r1 >= M) {
+                    continue;
+                }
+                int to = r1 * M + c1;
+                long toBit = 1L << to;
+                if ((own & toBit) != 0 || (BETWEEN[from][to] & opp) != 0) {
+                    continue;
+                }
+                buf[n] = ((opp & toBit) != 0 ? capture : quiet)
+                    | from | to << 6;
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+
     /** Return a sequence of all legal moves from this position. */
     Iterator<Move> legalMoves() {
         return new MoveIterator();
@@ -195,7 +499,7 @@ class Board implements Iterable<Move> {
     /** Return true if there is at least one legal move for the player
      *  on move. */
     public boolean isLegalMove() {
-        return iterator().hasNext();
+        return generateMoves(_scratchMoves) > 0;
     }
 
     /** Return true iff either player has all his pieces continguous. */
@@ -203,89 +507,51 @@ class Board implements Iterable<Move> {
         return piecesContiguous(BP) || piecesContiguous(WP);
     }
 
-    /** Returns true if an index is valid in piecesContiguous.
-     *  @param i
-     *       the column integer.
-     *  @param j
-     *       the row integer.
-     */
-    boolean isValid(int i, int j) {
-        if (i >= 0 && i <= 7 && j >= 0 && j <= 7) {
-            return true;
-        }
-        return false;
-    }
-
-    /** 2D array to keep track here DFS has visited. */
-    private static boolean[][] _visited = new boolean[M][M];
-
-    /** Sum of contiguous pieces. */
-    private int contSum;
-
-    /** String abbrev of the piece SIDE. */
-    private String sideAbbrev;
-
-    /** String abbrev of the piece. */
-    private Piece p;
-
-    /** DFS.
-     * @param i is the column integer
-     * @param j is the row integer.
-     * @return int.
-     */
-    private int dfs(int i, int j) {
-        _visited[i][j] = true;
-        int[] intI = {i - 1, i + 1, i};
-        int[] intJ = {j - 1, j + 1, j};
-        for (int m = 0; m < 3; m++) {
-            for (int n = 0; n < 3; n++) {
-                if (m == 2 && n == 2) {
-                    continue;
-                }
-                if (isValid(intI[m], intJ[n]) && !_visited[intI[m]][intJ[n]]) {
-                    p = boardArr[m][n];
-                    if (p.abbrev().equals(sideAbbrev)) {
-                        contSum++;
-                        dfs(intI[m], intJ[n]);
-                    }
-                }
-            }
-        }
-        return contSum;
-    }
-
-    /** Return the total number of SIDE pieces in the board. */
-    private int totalCount(Piece side) {
-        int sum = 0;
-        for (int i = 0; i < M; i++) {
-            for (int j = 0; j < M; j++) {
-                if (boardArr[i][j].abbrev().equals(sideAbbrev)) {
-                    sum++;
-                }
-            }
+    /** Return the side that has won (BP or WP), or null if the game is
+     *  not over.  If both sides' pieces are contiguous, the side to move
+     *  wins. */
+    Piece winner() {
+        boolean black = piecesContiguous(BP), white = piecesContiguous(WP);
+        if (black && white) {
+            return _turn;
+        } else if (black) {
+            return BP;
+        } else if (white) {
+            return WP;
         }
-        return sum;
+        return null;
     }
 
     /** Return true iff SIDE's pieces are continguous. */
     boolean piecesContiguous(Piece side) {
-        int k;
-        int l;
-        sideAbbrev = side.abbrev();
-        for (int i = 0; i < M; i++) {
-            for (int j = 0; j < M; j++) {
-                _visited[i][j] = false;
-            }
+        long own = pieces(side);
+        if (own == 0) {
+            return false;
         }
-        contSum = 0;
-        for (k = 0; k < M; k++) {
-            for (l = 0; l < M; l++) {
-                if (boardArr[k][l].abbrev().equals(sideAbbrev)) {
-                    return dfs(k, l) == totalCount(side);
-                }
+        return group(own & -own, own) == own;
+    }
+
+    /** Return the squares of PIECES that are connected to those of SEED
+     *  (a subset of PIECES) through chains of adjacent squares (including
+     *  diagonally adjacent ones) in PIECES.  Uses a shift-and-mask flood
+     *  fill, so it takes at most a few steps per square of the group. */
+    static long group(long seed, long pieces) {
+        long group = seed;
+        while (true) {
+            long next = adjacent(group) & pieces;
+            if (next == group) {
+                return group;
             }
+            group = next;
         }
-        return false;
+    }
+
+    /** Return the mask of SQUARES together with all squares adjacent to
+     *  them. */
+    static long adjacent(long squares) {
+        long row = squares | (squares << 1) & ~FILE_A
+            | (squares >>> 1) & ~FILE_H;
+        return row | row << M | row >>> M;
     }
 
     /** Return the total number of moves that have been made (and not
@@ -295,51 +561,30 @@ class Board implements Iterable<Move> {
         return _moves.size();
     }
 
+    /** Return a 64-bit Zobrist hash of the current position: the XOR of
+     *  a fixed random value for each (piece, square) pair on the board,
+     *  and of SIDE_KEY when white is to move.  Equal positions have equal
+     *  keys; set, makeMove and retract update it in constant time. */
+    long key() {
+        return _key;
+    }
+
+    /** Two Boards are equal iff they have the same pieces on the same
+     *  squares and the same side to move.  The move history is not
+     *  compared. */
     @Override
     public boolean equals(Object obj) {
+        if (!(obj instanceof Board)) {
+            return false;
+        }
         Board b = (Board) obj;
-        return b.hashCode() == this.hashCode();
+        return _key == b._key && _black == b._black && _white == b._white
+            && _turn == b._turn;
     }
 
     @Override
     public int hashCode() {
-        int sum = 0;
-        int temp;
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                String s = boardArr[i][j].abbrev();
-                if (s.equals("b")) {
-                    temp = 0;
-                } else if (s.equals("w")) {
-                    temp = 1;
-                } else if (s.equals("-")) {
-                    temp = 2;
-                } else {
-                    throw new IllegalArgumentException("No such piece");
-                }
-                sum += power(3, (8 * i) + j);
-            }
-        }
-        return sum;
-    }
-
-    /** Finding the power of a number.
-      * @return int.
-      * @param base
-      *    the base of the power
-      * @param exp
-      *    the exponent of the power
-      */
-    public int power(int base, int exp) {
-        if (exp == 0) {
-            return 1;
-        }
-        long result = power(base, exp / 2);
-        result *= result % G;
-        if (exp % 2 == 1) {
-            result *= base;
-        }
-        return (int) result;
+        return (int) (_key ^ (_key >>> 32));
     }
 
     @Override
@@ -361,93 +606,53 @@ class Board implements Iterable<Move> {
     private int pieceCountAlong(Move move) {
         int dCol = move.getCol1() - move.getCol0();
         int dRow = move.getRow1() - move.getRow0();
-        int c = move.getCol0();
-        int r = move.getRow0();
-        int i;
-        for (Direction d : Direction.values()) {
-            for (i = 1; i <= 7; i++) {
-                if (dCol == d.dc * i && dRow == d.dr * i) {
-                    return pieceCountAlong(c, r, d);
-                }
-            }
+        Direction d;
+        if (dCol == 0) {
+            d = N;
+        } else if (dRow == 0) {
+            d = E;
+        } else if (dCol == dRow) {
+            d = NE;
+        } else if (dCol == -dRow) {
+            d = NW;
+        } else {
+            throw new IllegalArgumentException("not a valid direction");
         }
-        throw new IllegalArgumentException("not a valid direction");
+        return pieceCountAlong(move.getCol0(), move.getRow0(), d);
     }
 
     /** Return the number of pieces in the line of action in direction DIR and
      *  containing the square at column C and row R. */
     public int pieceCountAlong(int c, int r, Direction dir) {
-        int count = 0;
-        c--;
-        r--;
-        int i;
-        if (dir == NOWHERE) {
-            return (!boardArr[r][c].abbrev().equals("-") ? 1 : 0);
-        } else if (dir == S || dir == N) {
-            for (i = 0; i < M; i++) {
-                if (!boardArr[i][c].abbrev().equals("-")) {
-                    count++;
-                }
-            }
-        } else if (dir == E || dir == W) {
-            for (i = 0; i < M; i++) {
-                if (!boardArr[r][i].abbrev().equals("-")) {
-                    count++;
-                }
-            }
-        } else if (dir == NE || dir == SW) {
-            for (i = -Math.min(c, r); i <= Math.min(7 - c, 7 - r); i++) {
-                if (!boardArr[r + i][c + i].abbrev().equals("-")) {
-                    count++;
-                }
-            }
-        } else if (dir == NW || dir == SE) {
-            for (i = -Math.min(c, 7 - r); i <= Math.min(7 - c, r); i++) {
-                if (!boardArr[r - i][c + i].abbrev().equals("-")) {
-                    count++;
-                }
-            }
-        } else {
+        switch (dir) {
+        case NOWHERE:
+            return (int) (occupied() >>> sq(c, r)) & 1;
+        case N: case S:
+            return _colCount[c - 1];
+        case E: case W:
+            return _rowCount[r - 1];
+        case NE: case SW:
+            return _diagCount[c - r + M - 1];
+        case NW: case SE:
+            return _antiCount[c + r - 2];
+        default:
             throw new IllegalArgumentException("bad direction");
         }
-        return count;
     }
 
     /** Return true iff MOVE is blocked by an opposing piece or by a
      *  friendly piece on the target square. */
     public boolean blocked(Move move) {
-        String t = move.replacedPiece().abbrev();
-        String s = move.movedPiece().abbrev();
-        if (s.equals("-")) {
+        Piece moved = move.movedPiece();
+        if (moved == EMP) {
             throw new IllegalArgumentException("can't move empty piece");
         }
-        if (s.equals(t)) {
+        if (moved == move.replacedPiece()) {
             return true;
         }
-        int c0 = move.getCol0();
-        int c1 = move.getCol1();
-        int r0 = move.getRow0();
-        int r1 = move.getRow1();
-        int dCol = c1 - c0;
-        int dRow = r1 - r0;
-        int i, j;
-        for (Direction d : Direction.values()) {
-            for (i = 1; i <= 7; i++) {
-                if (dCol == d.dc * i && dRow == d.dr * i) {
-                    for (j = 1; j < i; j++) {
-                        String u = get(c0 + d.dc * j, r0 + d.dr * j).abbrev();
-                        if (s.equals("w") && u.equals("b")) {
-                            return true;
-                        }
-                        if (s.equals("b") && u.equals("w")) {
-                            return true;
-                        }
-                    }
-                    return false;
-                }
-            }
-        }
-        throw new IllegalArgumentException("not a valid direction");
+        int from = sq(move.getCol0(), move.getRow0());
+        int to = sq(move.getCol1(), move.getRow1());
+        return (BETWEEN[from][to] & pieces(moved.opposite())) != 0;
     }
 
     /** The standard initial configuration for Lines of Action. */
@@ -462,101 +667,152 @@ class Board implements Iterable<Move> {
         { EMP, BP,  BP,  BP,  BP,  BP,  BP,  EMP }
     };
 
+    /** ZOBRIST[P][K] is the random key of piece P (BP or WP, by ordinal)
+     *  on the square with index K. */
+    private static final long[][] ZOBRIST = new long[2][M * M];
+
+    /** Random key included in key() when white is to move. */
+    private static final long SIDE_KEY;
+
+    /** Seed for the Zobrist keys.  Keys must not change between runs,
+     *  since they may be stored outside the program. */
+    private static final long ZOBRIST_SEED = 0x6c6f615a6f627269L;
+
+    /** Masks of the squares in columns a and h. */
+    static final long FILE_A = 0x0101010101010101L, FILE_H = FILE_A << 7;
+
+    /** Column and row steps of the directions N, NE, E, SE, S, SW, W, NW,
+     *  in that order.  Direction D lies along a column when D % 4 == 0, a
+     *  SW-NE diagonal when D % 4 == 1, a row when D % 4 == 2, and a NW-SE
+     *  diagonal when D % 4 == 3. */
+    private static final int[]
+        DIR_COL = { 0, 1, 1, 1, 0, -1, -1, -1 },
+        DIR_ROW = { 1, 1, 0, -1, -1, -1, 0, 1 };
+
+    /** BETWEEN[A][B] is the mask of squares strictly between square
+     *  indices A and B when they share a line of action, else 0. */
+    private static final long[][] BETWEEN = new long[M * M][M * M];
+
+    /* Quads.  The board, bordered by empty squares, is covered by
+     * (M + 1) * (M + 1) overlapping 2x2 windows ("quads").  Counting, for
+     * one side, the quads that contain exactly one of its pieces (Q1),
+     * exactly three (Q3) and exactly two, diagonally opposite (QD), gives
+     * the Euler number of its pieces, taking diagonal neighbours as
+     * connected, as (Q1 - Q3 - 2 QD) / 4 (Gray, 1971).  Since a piece
+     * lies in just four quads, the sum can be kept up to date as pieces
+     * come and go. */
+
+    /** Number of quads. */
+    private static final int QUADS = (M + 1) * (M + 1);
+
+    /** QUAD_OF[K][I] is the index of the quad in which the square with
+     *  index K is corner I: 0 for lower left, 1 lower right, 2 upper
+     *  left and 3 upper right.  Quad (QC, QR), for 0 <= QC,QR <= M, has
+     *  index QR * (M + 1) + QC and its lower left corner at column QC,
+     *  row QR.  Corner I is bit (1 << I) of the quad's pattern. */
+    private static final int[][] QUAD_OF = new int[M * M][4];
+
+    /** QUAD_EULER[P] is the contribution of a quad with pattern P to
+     *  4 times the Euler number. */
+    private static final int[] QUAD_EULER = new int[16];
+
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (long[] pieceKeys : ZOBRIST) {
+            for (int k = 0; k < M * M; k += 1) {
+                pieceKeys[k] = keys.nextLong();
+            }
+        }
+        SIDE_KEY = keys.nextLong();
+        for (int k = 0; k < M * M; k += 1) {
+            int c = col(k), r = row(k);
+            QUAD_OF[k][0] = r * (M + 1) + c;
+            QUAD_OF[k][1] = r * (M + 1) + c - 1;
+            QUAD_OF[k][2] = (r - 1) * (M + 1) + c;
+            QUAD_OF[k][3] = (r - 1) * (M + 1) + c - 1;
+        }
+        for (int p = 0; p < 16; p += 1) {
+            int n = Integer.bitCount(p);
+            QUAD_EULER[p] = n == 1 ? 1 : n == 3 ? -1
+                : p == 0b1001 || p == 0b0110 ? -2 : 0;
+        }
+        for (int from = 0; from < M * M; from += 1) {
+            for (Direction d = N; d != null; d = d.succ()) {
+                long path = 0;
+                int c = col(from) + d.dc, r = row(from) + d.dr;
+                for (; 1 <= c && c <= M && 1 <= r && r <= M;
+                     c += d.dc, r += d.dr) {
+                    BETWEEN[from][sq(c, r)] = path;
+                    path |= 1L << sq(c, r);
+                }
+            }
+        }
+    }
+
     /** List of all unretracted moves on this board, in order. */
     private final ArrayList<Move> _moves = new ArrayList<>();
     /** Current side on move. */
     private Piece _turn;
 
-    /** 2D Array showing the board's arrangement. */
-    private static Piece[][] boardArr = new Piece[M][M];
-
-    /** An iterator returning the legal moves from the current board. */
+    /** Occupancy masks of the black and white pieces, indexed as
+     *  described at sq(int, int). */
+    private long _black, _white;
+
+    /** Zobrist hash of the current position (see key()). */
+    private long _key;
+
+    /** Scratch buffer for generateMoves. */
+    private final int[] _scratchMoves = new int[MAX_MOVES];
+
+    /** Numbers of pieces in each row (index row - 1), each column
+     *  (index column - 1), each diagonal running SW-NE (index
+     *  column - row + M - 1) and each diagonal running NW-SE (index
+     *  column + row - 2).  Kept up to date by set, makeMove and retract. */
+    private final int[]
+        _rowCount = new int[M], _colCount = new int[M],
+        _diagCount = new int[2 * M - 1], _antiCount = new int[2 * M - 1];
+
+    /** Quad patterns (see QUAD_OF) of the black and white pieces (by
+     *  ordinal). */
+    private final byte[][] _quads = new byte[2][QUADS];
+    /** Four times the Euler numbers (see eulerNumber), the sums of the
+     *  columns and of the rows, and the sums of the squares of columns
+     *  and rows, of the black and white pieces.  Kept up to date by
+     *  place. */
+    private final int[]
+        _euler = new int[2], _colSum = new int[2], _rowSum = new int[2],
+        _squareSum = new int[2];
+
+    /** An iterator returning the legal moves from the current board, in
+     *  the order produced by generateMoves. */
     private class MoveIterator implements Iterator<Move> {
-        /** Current piece under consideration. */
-        private int _c, _r;
-        /** Next direction of current piece to return. */
-        private Direction _dir;
-        /** Next move. */
-        private Move _move;
+        /** Encoded legal moves. */
+        private final int[] _codes = new int[MAX_MOVES];
+        /** Number of valid entries in _codes. */
+        private final int _count;
+        /** Index of the next move to return. */
+        private int _next;
 
         /** A new move iterator for turn(). */
         MoveIterator() {
-            _c = 1; _r = 1; _dir = NOWHERE;
-            incr();
+            _count = generateMoves(_codes);
         }
 
         @Override
         public boolean hasNext() {
-            return _move != null;
+            return _next < _count;
         }
 
         @Override
         public Move next() {
-            if (_move == null) {
+            if (_next >= _count) {
                 throw new NoSuchElementException("no legal move");
             }
-
-            Move move = _move;
-            incr();
-            return move;
+            return Move.decode(_codes[_next++]);
         }
 
         @Override
         public void remove() {
         }
-        /** Advance to the next _c and _r. */
-        private void nextPiece() {
-            if (_c == M && _r <= M) {
-                _c = 1;
-                _r++;
-            } else if (_r > M) {
-                _move = null;
-            } else {
-                _c++;
-            }
-        }
-
-        /** Advance to the next legal move. */
-        private void incr() {
-            Move tempMove = null;
-            Piece t1, t2;
-            while (_r <= M) {
-                t1 = Board.this._turn;
-                t2 = Board.this.get(_c, _r);
-                if (t1 == t2) {
-                    break;
-                } else {
-                    nextPiece();
-                }
-            }
-            if (_r > M) {
-                _move = null;
-                return;
-            }
-            int c1, r1, count3;
-            Piece temp1, temp2;
-            Board tempBoard;
-            _dir = _dir.succ();
-            while (_dir !=  null) {
-                count3 = pieceCountAlong(_c, _r, _dir);
-                c1 = _c + _dir.dc * count3;
-                r1 = _r + _dir.dr * count3;
-                tempMove = Move.create(_c, _r, c1, r1, Board.this);
-                if (tempMove == null) {
-                    _dir = _dir.succ();
-                    continue;
-                }
-                if (isLegal(tempMove)) {
-                    _move = tempMove;
-                    break;
-                }
-                _dir = _dir.succ();
-            }
-            if (_dir == null) {
-                _dir = NOWHERE;
-                nextPiece();
-                incr();
-            }
-        }
     }
 }
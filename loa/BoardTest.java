@@ -1,5 +1,7 @@
 package loa;
 
+import java.util.Random;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static loa.Piece.*;
@@ -48,4 +50,269 @@ public class BoardTest {
         assertTrue(_board.blocked(m));
 
     }
+
+    @Test
+    public void makeRetractTest() {
+        Move m = Move.create("b1-d3", _board);
+        _board.makeMove(m);
+        assertEquals(BP, _board.get(4, 3));
+        assertEquals(EMP, _board.get(2, 1));
+        assertEquals(WP, _board.turn());
+        Move capture = Move.create("a3-d3", _board);
+        assertEquals(BP, capture.replacedPiece());
+        _board.makeMove(capture);
+        assertEquals(WP, _board.get(4, 3));
+        assertEquals(EMP, _board.get(1, 3));
+        _board.retract();
+        _board.retract();
+        assertEquals(BP, _board.get(2, 1));
+        assertEquals(EMP, _board.get(4, 3));
+        assertEquals(WP, _board.get(1, 3));
+        assertEquals(BP, _board.turn());
+    }
+
+    @Test
+    public void pieceCountAlongTracksMovesTest() {
+        _board.makeMove(Move.create("b1-d3", _board));
+        assertEquals(3, _board.pieceCountAlong(4, 3, E));
+        assertEquals(3, _board.pieceCountAlong(4, 3, N));
+        assertEquals(1, _board.pieceCountAlong(2, 1, N));
+        _board.makeMove(Move.create("a3-d3", _board));
+        assertEquals(2, _board.pieceCountAlong(4, 3, W));
+        assertEquals(5, _board.pieceCountAlong(1, 1, N));
+        _board.retract();
+        _board.retract();
+        assertEquals(2, _board.pieceCountAlong(4, 3, E));
+        assertEquals(2, _board.pieceCountAlong(2, 1, S));
+        _board.set(4, 3, WP);
+        assertEquals(3, _board.pieceCountAlong(1, 3, E));
+        assertEquals(3, _board.pieceCountAlong(2, 1, NE));
+    }
+
+    @Test
+    public void keyTest() {
+        long initial = _board.key();
+        assertEquals(initial, new Board().key());
+        _board.makeMove(Move.create("b1-d3", _board));
+        long afterB1 = _board.key();
+        assertTrue(afterB1 != initial);
+        _board.makeMove(Move.create("a3-d3", _board));
+        Board fresh = new Board();
+        for (int r = 1; r <= M; r += 1) {
+            for (int c = 1; c <= M; c += 1) {
+                fresh.set(c, r, _board.get(c, r));
+            }
+        }
+        fresh.set(1, 1, fresh.get(1, 1), BP);
+        assertEquals(_board.key(), fresh.key());
+        assertEquals(_board, fresh);
+        assertEquals(_board.hashCode(), fresh.hashCode());
+        fresh.set(1, 1, fresh.get(1, 1), WP);
+        assertTrue(_board.key() != fresh.key());
+        assertFalse(_board.equals(fresh));
+        _board.retract();
+        assertEquals(afterB1, _board.key());
+        _board.retract();
+        assertEquals(initial, _board.key());
+        assertEquals(new Board(), _board);
+    }
+
+    @Test
+    public void transpositionTest() {
+        Board other = new Board();
+        _board.makeMove(Move.create("b1-b3", _board));
+        _board.makeMove(Move.create("a2-c2", _board));
+        _board.makeMove(Move.create("g1-g3", _board));
+        _board.makeMove(Move.create("h7-f7", _board));
+        other.makeMove(Move.create("g1-g3", other));
+        other.makeMove(Move.create("h7-f7", other));
+        other.makeMove(Move.create("b1-b3", other));
+        other.makeMove(Move.create("a2-c2", other));
+        assertEquals(_board.key(), other.key());
+        assertEquals(_board, other);
+    }
+
+    @Test
+    public void generateMovesTest() {
+        int[] buf = new int[Board.MAX_MOVES];
+        int n = _board.generateMoves(buf);
+        assertEquals(36, n);
+        int i = 0;
+        for (Move move : _board) {
+            assertTrue(i < n);
+            assertSame(move, Move.decode(buf[i]));
+            assertEquals(move.code(), buf[i]);
+            assertTrue(_board.isLegal(move));
+            i += 1;
+        }
+        assertEquals(n, i);
+        _board.makeMove(Move.create("b1-d3", _board));
+        n = _board.generateMoves(buf);
+        i = 0;
+        for (Move move : _board) {
+            boolean capture = Move.isCapture(buf[i]);
+            assertEquals(capture, move.replacedPiece() == BP);
+            i += 1;
+        }
+        assertEquals(n, i);
+    }
+
+    @Test
+    public void moveCodeTest() {
+        Move m = Move.create("b1-d3", _board);
+        int code = m.code();
+        assertTrue(code != Move.NONE && code < Move.CODES);
+        assertEquals(Board.sq(2, 1), Move.from(code));
+        assertEquals(Board.sq(4, 3), Move.to(code));
+        assertEquals(BP, Move.moved(code));
+        assertEquals(EMP, Move.replaced(code));
+        assertFalse(Move.isCapture(code));
+        assertSame(m, Move.decode(code));
+        _board.makeMove(code);
+        Move c = Move.create("a3-d3", _board);
+        assertEquals(c.code(), Move.encode(Board.sq(1, 3), Board.sq(4, 3),
+                                           WP, BP));
+        assertTrue(Move.isCapture(c.code()));
+        assertEquals(BP, Move.replaced(c.code()));
+        assertSame(c, Move.decode(c.code()));
+        assertNull(Move.decode(Move.NONE));
+    }
+
+    /** Return the number of SIDE pieces on B reachable from column C,
+     *  row R, marking them in VISITED. */
+    private int reach(Board b, Piece side, int c, int r, boolean[][] visited) {
+        if (c < 1 || c > M || r < 1 || r > M || visited[c - 1][r - 1]
+            || b.get(c, r) != side) {
+            return 0;
+        }
+        visited[c - 1][r - 1] = true;
+        int n = 1;
+        for (int dc = -1; dc <= 1; dc += 1) {
+            for (int dr = -1; dr <= 1; dr += 1) {
+                n += reach(b, side, c + dc, r + dr, visited);
+            }
+        }
+        return n;
+    }
+
+    @Test
+    public void piecesContiguousRandomTest() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 2000; trial += 1) {
+            Board b = new Board();
+            int first = -1, total = 0;
+            for (int sq = 0; sq < M * M; sq += 1) {
+                int k = random.nextInt(trial % 5 + 2);
+                Piece p = k == 0 ? BP : k == 1 ? WP : EMP;
+                b.set(Board.col(sq), Board.row(sq), p);
+                if (p == BP) {
+                    total += 1;
+                    first = first < 0 ? sq : first;
+                }
+            }
+            boolean expected = first >= 0
+                && reach(b, BP, Board.col(first), Board.row(first),
+                         new boolean[M][M]) == total;
+            assertEquals(expected, b.piecesContiguous(BP));
+        }
+        Board b = new Board();
+        assertFalse(b.gameOver());
+        for (int c = 2; c <= 7; c += 1) {
+            b.set(c, 8, EMP);
+            b.set(c, 2, BP);
+        }
+        assertTrue(b.piecesContiguous(BP));
+        b.set(8, 4, BP);
+        assertFalse(b.piecesContiguous(BP));
+        b.set(8, 3, BP);
+        assertTrue(b.gameOver());
+    }
+
+    @Test
+    public void eulerNumberTest() {
+        Board b = new Board();
+        assertEquals(2, b.eulerNumber(BP));
+        assertEquals(2, b.eulerNumber(WP));
+        b = new Board("--------/--------/--bbb---/--b-b---/--bbb---/--------/"
+                      + "--------/-----w-w b");
+        assertEquals(0, b.eulerNumber(BP));
+        assertEquals(2, b.eulerNumber(WP));
+        b.set(4, 5, BP);
+        assertEquals(1, b.eulerNumber(BP));
+    }
+
+    @Test
+    public void incrementalTermsTest() {
+        Random random = new Random(14);
+        Board b = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int step = 0; step < 3000; step += 1) {
+            int n = b.gameOver() ? 0 : b.generateMoves(moves);
+            if (n == 0 || b.movesMade() > 0 && random.nextInt(3) == 0) {
+                b.retract();
+            } else {
+                b.makeMove(moves[random.nextInt(n)]);
+            }
+            for (Piece side : new Piece[] { BP, WP }) {
+                int euler = 0, cols = 0, rows = 0, squares = 0;
+                for (int qr = 0; qr <= M; qr += 1) {
+                    for (int qc = 0; qc <= M; qc += 1) {
+                        int p = 0;
+                        p |= at(b, side, qc, qr) ? 1 : 0;
+                        p |= at(b, side, qc + 1, qr) ? 2 : 0;
+                        p |= at(b, side, qc, qr + 1) ? 4 : 0;
+                        p |= at(b, side, qc + 1, qr + 1) ? 8 : 0;
+                        int k = Integer.bitCount(p);
+                        euler += k == 1 ? 1 : k == 3 ? -1
+                            : p == 9 || p == 6 ? -2 : 0;
+                    }
+                }
+                for (int c = 1; c <= M; c += 1) {
+                    for (int r = 1; r <= M; r += 1) {
+                        if (b.get(c, r) == side) {
+                            cols += c;
+                            rows += r;
+                            squares += c * c + r * r;
+                        }
+                    }
+                }
+                assertEquals(euler / 4, b.eulerNumber(side));
+                assertEquals(cols, b.columnSum(side));
+                assertEquals(rows, b.rowSum(side));
+                assertEquals(squares, b.squareSum(side));
+            }
+            assertEquals(b.eulerNumber(WP), new Board(b).eulerNumber(WP));
+        }
+    }
+
+    /** Return true iff column C, row R of B, which may be off the board,
+     *  holds a piece of SIDE. */
+    private static boolean at(Board b, Piece side, int c, int r) {
+        return 1 <= c && c <= M && 1 <= r && r <= M && b.get(c, r) == side;
+    }
+
+    @Test
+    public void passTurnTest() {
+        Board b = new Board();
+        long key = b.key();
+        b.passTurn();
+        assertEquals(WP, b.turn());
+        assertEquals(new Board(b.position()).key(), b.key());
+        b.passTurn();
+        assertEquals(BP, b.turn());
+        assertEquals(key, b.key());
+        assertEquals(0, b.movesMade());
+    }
+
+    @Test
+    public void winnerTest() {
+        Board b = new Board();
+        assertNull(b.winner());
+        b = new Board("--------/--------/--------/--------/--------/--------/"
+                      + "-w------/bb-----w b");
+        assertEquals(BP, b.winner());
+        b = new Board("--------/--------/--------/--------/--------/--------/"
+                      + "--------/bb-----w w");
+        assertEquals(WP, b.winner());
+    }
 }
@@ -0,0 +1,261 @@
+package loa;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/** Builds OpeningBooks from recorded games.  Run as
+ *      java loa.BookBuilder GAMES BOOK [N]
+ *  to play N new self-play games (if N is given) and append them to the
+ *  file GAMES, and then write the book for all the games in GAMES to the
+ *  file BOOK.  A games file has one game per line: the moves from the
+ *  initial position, separated by blanks, in the usual notation
+ *  (e.g., d1-d3).  Blank lines and lines starting with # are ignored.
+ *  GAMES may instead be a game record file (see GameRecords), such as
+ *  Tournament --record writes, and new games are then appended to it in
+ *  that format.
+ *  @author Tara Calista
+ */
+class BookBuilder {
+
+    /** Default number of plies from the start of each game recorded. */
+    static final int PLIES = 12;
+
+    /** Default number of games in which a move must have been played to
+     *  get a positive weight. */
+    static final int MIN_GAMES = 2;
+
+    /** Nodes per move in self-play games. */
+    static final long PLAY_NODES = 20000;
+
+    /** Build books with PLIES and MIN_GAMES, after playing the number of
+     *  games in ARGS, as described above. */
+    public static void main(String... args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: java loa.BookBuilder GAMES BOOK [N]");
+            System.exit(1);
+        }
+        try {
+            Path games = Path.of(args[0]), book = Path.of(args[1]);
+            if (args.length == 3) {
+                EngineConfig config = new EngineConfig();
+                config.moveTime = 0;
+                config.moveNodes = PLAY_NODES;
+                config.hashMegabytes = Benchmark.MATCH_HASH;
+                appendGames(games, Integer.parseInt(args[2]), config);
+            }
+            BookBuilder builder = new BookBuilder(PLIES, MIN_GAMES);
+            for (int[] game : readGames(games)) {
+                builder.add(game);
+            }
+            builder.write(book);
+            System.out.printf("%d games, %d book moves%n", builder.games(),
+                              builder.size());
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Play N self-play games between engines configured by CONFIG (see
+     *  playGame), and append them to GAMES: in the game record format if
+     *  GAMES is a record file, and otherwise as lines of text, creating
+     *  GAMES if need be.  The random choices of each game are seeded with
+     *  its number in GAMES. */
+    static void appendGames(Path games, int n, EngineConfig config)
+        throws IOException {
+        int first = Files.exists(games) ? readGames(games).size() : 0;
+        if (Files.exists(games) && GameRecords.isRecordFile(games)) {
+            try (GameRecorder out = new GameRecorder(games)) {
+                for (int g = 0; g < n; g += 1) {
+                    int[] game = playGame(config, new Random(first + g));
+                    out.write(first + g, GameRecords.SEARCH,
+                              GameRecords.SEARCH, game, game.length,
+                              winner(game));
+                }
+            }
+        } else {
+            try (PrintWriter out =
+                 new PrintWriter(Files.newBufferedWriter(
+                     games, StandardOpenOption.CREATE,
+                     StandardOpenOption.APPEND))) {
+                for (int g = 0; g < n; g += 1) {
+                    writeGame(out, playGame(config, new Random(first + g)));
+                }
+            }
+        }
+    }
+
+    /** A builder that records the first PLIES plies of each game, and
+     *  gives positive weight only to moves played in at least MINGAMES
+     *  of them. */
+    BookBuilder(int plies, int minGames) {
+        _plies = plies;
+        _minGames = minGames;
+    }
+
+    /** Record the game that consists of the moves with the codes in
+     *  MOVES, from the initial position.  The game's result is that of
+     *  the last position: a win for Board.winner(), or else a draw. */
+    void add(int[] moves) {
+        Piece winner = winner(moves);
+        Board board = new Board();
+        for (int i = 0; i < moves.length && i < _plies; i += 1) {
+            int[] counts = _stats.computeIfAbsent(board.key(),
+                                                  k -> new HashMap<>())
+                .computeIfAbsent(moves[i], m -> new int[3]);
+            counts[winner == null ? 1 : winner == board.turn() ? 0 : 2] += 1;
+            board.makeMove(moves[i]);
+        }
+        _games += 1;
+    }
+
+    /** Return the number of games recorded. */
+    int games() {
+        return _games;
+    }
+
+    /** Return the number of distinct (position, move) pairs recorded. */
+    int size() {
+        int size = 0;
+        for (HashMap<Integer, int[]> moves : _stats.values()) {
+            size += moves.size();
+        }
+        return size;
+    }
+
+    /** Return the weight of a move with COUNTS wins, draws and losses:
+     *  its points, doubled, if played in at least _minGames games, or
+     *  else 0. */
+    int weight(int[] counts) {
+        int games = counts[0] + counts[1] + counts[2];
+        if (games < _minGames) {
+            return 0;
+        }
+        return (int) Math.min(0xffff, 2L * counts[0] + counts[1]);
+    }
+
+    /** Write the book of the games recorded so far to FILE, in the
+     *  format read by OpeningBook. */
+    void write(Path file) throws IOException {
+        Long[] keys = _stats.keySet().toArray(new Long[0]);
+        Arrays.sort(keys);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeLong(size());
+            for (long key : keys) {
+                HashMap<Integer, int[]> moves = _stats.get(key);
+                Integer[] codes = moves.keySet().toArray(new Integer[0]);
+                Arrays.sort(codes);
+                for (int code : codes) {
+                    int[] counts = moves.get(code);
+                    out.writeLong(key);
+                    out.writeShort(code);
+                    out.writeShort(weight(counts));
+                    out.writeInt(counts[0]);
+                    out.writeInt(counts[1]);
+                    out.writeInt(counts[2]);
+                }
+            }
+        }
+    }
+
+    /** Return the winner of the game that consists of the moves with
+     *  the codes in MOVES, from the initial position, or null if it has
+     *  none. */
+    static Piece winner(int[] moves) {
+        Board board = new Board();
+        for (int move : moves) {
+            board.makeMove(move);
+        }
+        return board.winner();
+    }
+
+    /** Return the games in the games file or game record file FILE, each
+     *  as an array of move codes.  Throws IllegalArgumentException if a
+     *  move in a games file is illegal. */
+    static List<int[]> readGames(Path file) throws IOException {
+        List<int[]> result = new ArrayList<>();
+        if (GameRecords.isRecordFile(file)) {
+            GameRecords records = new GameRecords(file);
+            for (int g = 0; g < records.size(); g += 1) {
+                result.add(records.moves(g));
+            }
+            return result;
+        }
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                Board board = new Board();
+                String[] words = line.split("\\s+");
+                int[] game = new int[words.length];
+                for (int i = 0; i < words.length; i += 1) {
+                    Move move = Move.create(words[i], board);
+                    if (move == null || board.gameOver()
+                        || !board.isLegal(move)
+                        || move.movedPiece() != board.turn()) {
+                        throw new IllegalArgumentException(
+                            String.format("illegal move in %s: %s", file,
+                                          words[i]));
+                    }
+                    game[i] = move.code();
+                    board.makeMove(move);
+                }
+                result.add(game);
+            }
+        }
+        return result;
+    }
+
+    /** Write the game whose move codes are GAME to OUT as one line of a
+     *  games file. */
+    static void writeGame(PrintWriter out, int[] game) {
+        StringBuilder line = new StringBuilder();
+        for (int move : game) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(Move.decode(move));
+        }
+        out.println(line);
+    }
+
+    /** Return the move codes of a self-play game between engines
+     *  configured by CONFIG, played as Tournament plays its games (see
+     *  Tournament.playGame), with its random choices made with RANDOM. */
+    static int[] playGame(EngineConfig config, Random random) {
+        Tournament.Entrant player =
+            new Tournament.Entrant("self-play", config, false);
+        return Tournament.playGame(player, player, random,
+                                   random.nextLong());
+    }
+
+    /** Number of plies recorded from each game. */
+    private final int _plies;
+    /** Least number of games for a positive weight. */
+    private final int _minGames;
+    /** Number of games recorded. */
+    private int _games;
+    /** Maps each position key to a map from the codes of the moves
+     *  played from it to their numbers of wins, draws and losses (for
+     *  the side that moved). */
+    private final HashMap<Long, HashMap<Integer, int[]>> _stats =
+        new HashMap<>();
+
+}
@@ -0,0 +1,83 @@
+package loa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Checks that independent Boards may be used from many threads at once.
+ *  @author Tara Calista
+ */
+public class ConcurrencyTest {
+
+    /** Number of games played. */
+    static final int GAMES = 2000;
+
+    /** Longest game played, in moves. */
+    static final int MAX_LENGTH = 120;
+
+    /** Play game number SEED from a copy of START, choosing uniformly
+     *  among the legal moves with a Random seeded by SEED, and return the
+     *  moves played, followed by the final position. */
+    static String playGame(Board start, long seed) {
+        Board board = new Board(start);
+        Random random = new Random(seed);
+        StringBuilder record = new StringBuilder();
+        List<Move> moves = new ArrayList<>();
+        while (!board.gameOver() && board.movesMade() < MAX_LENGTH) {
+            moves.clear();
+            for (Move move : board) {
+                moves.add(move);
+            }
+            if (moves.isEmpty()) {
+                break;
+            }
+            Move move = moves.get(random.nextInt(moves.size()));
+            board.makeMove(move);
+            record.append(move).append(' ');
+        }
+        return record.append(board).toString();
+    }
+
+    @Test
+    public void parallelGamesMatchSerialGames() throws Exception {
+        Board start = new Board();
+        String[] serial = new String[GAMES];
+        for (int i = 0; i < GAMES; i += 1) {
+            serial[i] = playGame(start, i);
+        }
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < GAMES; i += 1) {
+                final long seed = i;
+                results.add(pool.submit(() -> playGame(start, seed)));
+            }
+            for (int i = 0; i < GAMES; i += 1) {
+                assertEquals("game " + i, serial[i], results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(new Board().toString(), start.toString());
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+        Board original = new Board();
+        Board copy = new Board(original);
+        copy.makeMove(Move.create("b1-d3", copy));
+        assertEquals(Piece.BP, original.get(2, 1));
+        assertEquals(Piece.EMP, original.get(4, 3));
+        assertEquals(0, original.movesMade());
+        assertEquals(Piece.BP, original.turn());
+    }
+
+}
@@ -0,0 +1,131 @@
+package loa;
+
+/** Settings for the automated players.  A Game owns one EngineConfig,
+ *  filled in from the command line, and each MachinePlayer consults it
+ *  every time it moves.
+ *  @author Tara Calista
+ */
+class EngineConfig implements Cloneable {
+
+    /** Time budget for each move, in milliseconds, or 0 for none. */
+    long moveTime = 1000;
+
+    /** Budget of search nodes for each move, or 0 for none. */
+    long moveNodes = 0;
+
+    /** Greatest depth, in plies, to which a move is searched. */
+    int maxDepth = Search.MAX_PLY - 1;
+
+    /** Size of each player's transposition table, in megabytes. */
+    int hashMegabytes = 16;
+
+    /** True if the search uses principal variation search: null windows
+     *  for all but the first move at each node. */
+    boolean pvs = true;
+
+    /** Half-width of the aspiration window around the last iteration's
+     *  score in which each iteration is first searched, or 0 to search
+     *  every iteration with a full window. */
+    int aspirationWindow = 80;
+
+    /** True if the search prunes with null moves (see
+     *  Search.tryNullMove). */
+    boolean nullMove = true;
+
+    /** Plies by which a null move's search is shallower than a real
+     *  move's. */
+    int nullMoveReduction = 2;
+
+    /** Least remaining depth at which null moves are tried. */
+    int nullMoveMinDepth = 3;
+
+    /** Null moves are not tried when either side has at most this many
+     *  groups, and so may be about to connect. */
+    int nullMoveGroups = 2;
+
+    /** True if the search reduces the depth of quiet moves late in the
+     *  move order (those ordered by history alone). */
+    boolean lateMoveReductions = true;
+
+    /** Least remaining depth at which moves are reduced. */
+    int lmrMinDepth = 3;
+
+    /** Index, in the order tried, of the first move that may be
+     *  reduced. */
+    int lmrMoveIndex = 6;
+
+    /** Plies by which a late move is reduced. */
+    int lmrReduction = 2;
+
+    /** Size of the evaluation cache of each searching thread, in
+     *  kilobytes, or 0 for none. */
+    int evalCacheKilobytes = 64;
+
+    /** Number of threads each player searches with. */
+    int threads = 1;
+
+    /** Number of tree nodes each MctsPlayer has room for (in each of its
+     *  two sets of arrays of six ints a node). */
+    int mctsNodes = 1 << 19;
+
+    /** Weight of the exploration term in MctsPlayers' UCT values. */
+    double mctsExploration = 0.7;
+
+    /** Greatest number of moves an MctsPlayer plays out beyond its tree
+     *  before scoring a playout by the static evaluation. */
+    int mctsPlayoutPlies = 12;
+
+    /** Book that players take their moves from while it has moves for
+     *  the position, or null for none.  Books are read-only, so one may
+     *  be shared by any number of players. */
+    OpeningBook book;
+
+    /** Engines that players borrow for each move instead of having their
+     *  own, or null if each player has its own (see EnginePool). */
+    EnginePool engines;
+
+    /** True if players first try to prove a win with a Solver when few
+     *  pieces remain or a side is close to connecting. */
+    boolean solver = true;
+
+    /** Players try the solver when at most this many pieces remain... */
+    int solverPieces = 14;
+
+    /** ...or when, after the opening, the side to move has at most this
+     *  many groups (see Solver.worthTrying). */
+    int solverGroups = 2;
+
+    /** Number of nodes the solver may expand on each move. */
+    long solverNodes = 20000;
+
+    /** Size of each player's solver table, in kilobytes. */
+    int solverKilobytes = 4096;
+
+    /** Depth beyond which the solver treats positions as not won. */
+    int solverDepth = 24;
+
+    /** True if players with a time budget search on their opponents'
+     *  time (see MachinePlayer). */
+    boolean ponder = false;
+
+    /** True if players search with ForkJoinSearch rather than LazySmp. */
+    boolean forkJoin = false;
+
+    /** True if the move chosen must depend only on the position and the
+     *  other settings, and not on timing or the number of threads: each
+     *  move is then searched to exactly maxDepth, ignoring the time and
+     *  node budgets, no search result is taken from the transposition
+     *  table in place of searching (the table still orders moves), and
+     *  there is no null-move pruning or late-move reduction. */
+    boolean deterministic = false;
+
+    /** Return a copy of me. */
+    EngineConfig copy() {
+        try {
+            return (EngineConfig) clone();
+        } catch (CloneNotSupportedException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package loa;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** A fixed number of engines (each a SearchStrategy with its Solver,
+ *  and for MctsPlayers an MctsTree) shared by the automated players of
+ *  any number of Games, as in GameServer.  An automated player whose
+ *  EngineConfig.engines is a pool borrows an engine for each move,
+ *  waiting if all are in use, so the memory and processors spent
+ *  searching are bounded by the pool's size, not by the number of
+ *  games.  Such a player does not ponder.
+ *  @author Tara Calista
+ */
+class EnginePool {
+
+    /** An engine lent out by the pool. */
+    static class Engine {
+
+        /** An engine configured by CONFIG. */
+        Engine(EngineConfig config) {
+            _config = config;
+            search = SearchStrategy.create(config);
+            solver = config.solver
+                ? new Solver(config.solverKilobytes, config.solverDepth)
+                : null;
+        }
+
+        /** The engine's search. */
+        final SearchStrategy search;
+        /** The engine's Solver, or null if CONFIG disables solving. */
+        final Solver solver;
+
+        /** Return the engine's Monte Carlo tree, created when first
+         *  asked for, since only MctsPlayers use one. */
+        MctsTree tree() {
+            if (_tree == null) {
+                _tree = new MctsTree(_config);
+            }
+            return _tree;
+        }
+
+        /** Stop the engine's threads. */
+        void shutdown() {
+            search.shutdown();
+            if (_tree != null) {
+                _tree.shutdown();
+            }
+        }
+
+        /** The engine's settings. */
+        private final EngineConfig _config;
+        /** The engine's Monte Carlo tree, or null if none is needed
+         *  yet. */
+        private MctsTree _tree;
+    }
+
+    /** A pool of SIZE engines configured by CONFIG. */
+    EnginePool(EngineConfig config, int size) {
+        _size = Math.max(1, size);
+        _idle = new ArrayBlockingQueue<>(_size);
+        for (int i = 0; i < _size; i += 1) {
+            _idle.add(new Engine(config));
+        }
+    }
+
+    /** Return an idle engine, waiting until there is one.  The caller
+     *  must release it when done. */
+    Engine acquire() {
+        long start = System.nanoTime();
+        try {
+            Engine engine = _idle.take();
+            _waits.record(System.nanoTime() - start);
+            return engine;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for an "
+                                            + "engine", excp);
+        }
+    }
+
+    /** Return ENGINE, obtained from acquire(), to the pool. */
+    void release(Engine engine) {
+        _idle.add(engine);
+    }
+
+    /** Return the number of engines. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of engines not lent out. */
+    int idle() {
+        return _idle.size();
+    }
+
+    /** Return the times spent in acquire() waiting for engines. */
+    LatencyStats waits() {
+        return _waits;
+    }
+
+    /** Stop the engines' threads for good.  Call only once no engine is
+     *  lent out. */
+    void shutdown() {
+        for (Engine engine : _idle) {
+            engine.shutdown();
+        }
+    }
+
+    /** Number of engines. */
+    private final int _size;
+    /** Engines not lent out. */
+    private final BlockingQueue<Engine> _idle;
+    /** Times spent waiting for engines. */
+    private final LatencyStats _waits = new LatencyStats();
+
+}
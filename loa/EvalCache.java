@@ -0,0 +1,87 @@
+package loa;
+
+import java.util.Arrays;
+
+/** A direct-mapped cache of static evaluations, indexed by Board.key().
+ *  Each entry is two longs: the key of the position and a data word
+ *  holding its score in the low 32 bits and VALID above them, so that
+ *  an empty entry (all zeros) never matches.  A new score always
+ *  replaces the entry in its slot.  Unlike a TranspositionTable, an
+ *  EvalCache belongs to a single Search, and so to one thread at a
+ *  time.
+ *  @author Tara Calista
+ */
+class EvalCache {
+
+    /** Flag marking a data word as holding a score. */
+    private static final long VALID = 1L << 32;
+
+    /** A cache using approximately KILOBYTES kilobytes (at least one
+     *  entry). */
+    EvalCache(int kilobytes) {
+        long entries = Math.max(1, (long) kilobytes << 10 >> 4);
+        int bits = 63 - Long.numberOfLeadingZeros(entries);
+        bits = Math.min(bits, 26);
+        _table = new long[2 << bits];
+        _mask = (1 << bits) - 1;
+    }
+
+    /** Return the data word cached for KEY, or 0 if there is none. */
+    long probe(long key) {
+        int i = index(key);
+        if (_table[i] == key && _table[i + 1] != 0) {
+            _hits += 1;
+            return _table[i + 1];
+        }
+        _misses += 1;
+        return 0;
+    }
+
+    /** Record that the position with key KEY evaluates to SCORE. */
+    void store(long key, int score) {
+        int i = index(key);
+        _table[i] = key;
+        _table[i + 1] = VALID | (score & 0xffffffffL);
+    }
+
+    /** Return the score in the data word DATA. */
+    static int score(long data) {
+        return (int) data;
+    }
+
+    /** Remove all entries and reset the counters. */
+    void clear() {
+        Arrays.fill(_table, 0);
+        _hits = _misses = 0;
+    }
+
+    /** Return the number of probes that found their position. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of probes that did not find their position. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Report my counters through Reporter at message level LEVEL. */
+    void report(int level) {
+        long probes = _hits + _misses;
+        Reporter.debug(level, "eval cache: %d probes, %d hits (%.1f%%)",
+                       probes, _hits, 100.0 * _hits / Math.max(1, probes));
+    }
+
+    /** Return the index in _table of the entry for KEY. */
+    private int index(long key) {
+        return ((int) (key ^ key >>> 32) & _mask) << 1;
+    }
+
+    /** Entries of two longs each. */
+    private final long[] _table;
+    /** Mask selecting an entry number from a hash. */
+    private final int _mask;
+    /** Probe counters. */
+    private long _hits, _misses;
+
+}
@@ -0,0 +1,60 @@
+package loa;
+
+/** The static evaluation used by Search.  It scores each side from
+ *  terms that Board keeps up to date as moves are made and retracted,
+ *  so that evaluating a position costs a few reads and some arithmetic,
+ *  rather than a search of the board for groups:
+ *  <ul>
+ *  <li> the number of groups, estimated by the Euler number of the
+ *       side's pieces (see Board.eulerNumber);
+ *  <li> the spread of the pieces about their centre of mass: the mean
+ *       squared distance from it (from Board.columnSum, Board.rowSum and
+ *       Board.squareSum);
+ *  <li> the distance of the centre of mass from the centre of the
+ *       board, since groups in the middle have more room to join.
+ *  </ul>
+ *  A side with fewer groups, packed more tightly, nearer the centre, is
+ *  closer to connecting.
+ *  @author Tara Calista
+ */
+class Evaluator {
+
+    /** Weights of the number of groups beyond the first, and of the mean
+     *  squared distances of the pieces from their centre of mass and of
+     *  the centre of mass from the centre of the board, the latter two
+     *  measured in units of 1/SCALE squares squared. */
+    static final int
+        GROUP_WEIGHT = 30, SPREAD_WEIGHT = 4, CENTRE_WEIGHT = 1;
+
+    /** Units per square squared of the distance terms. */
+    private static final int SCALE = 4;
+
+    /** Return the static value of the position on BOARD for the side to
+     *  move: its score less its opponent's. */
+    int evaluate(Board board) {
+        Piece turn = board.turn();
+        return score(board, turn) - score(board, turn.opposite());
+    }
+
+    /** Return the score of SIDE's pieces on BOARD, which is 0 for a
+     *  single piece and less the farther the pieces are from forming a
+     *  single compact group. */
+    static int score(Board board, Piece side) {
+        int n = Long.bitCount(board.pieces(side));
+        if (n <= 1) {
+            return 0;
+        }
+        int groups = Math.max(1, board.eulerNumber(side));
+        int cols = board.columnSum(side), rows = board.rowSum(side);
+        int nn = n * n;
+        int spread =
+            SCALE * (n * board.squareSum(side) - cols * cols - rows * rows)
+            / nn;
+        int dc = 2 * cols - (Board.M + 1) * n,
+            dr = 2 * rows - (Board.M + 1) * n;
+        int offCentre = SCALE * (dc * dc + dr * dr) / (4 * nn);
+        return -GROUP_WEIGHT * (groups - 1) - SPREAD_WEIGHT * spread
+            - CENTRE_WEIGHT * offCentre;
+    }
+
+}
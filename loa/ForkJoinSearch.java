@@ -0,0 +1,443 @@
+package loa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static loa.Search.*;
+import static loa.TranspositionTable.*;
+
+/** An iterative-deepening alpha-beta search that divides the tree among
+ *  the threads of a ForkJoinPool, in the "young brothers wait" style.
+ *  At a split point (a node fewer than SPLIT_PLY plies from the root
+ *  with at least MIN_SPLIT_DEPTH plies left) the first move is searched
+ *  alone, to get a good alpha, and then the remaining moves are forked
+ *  as tasks that share the node's alpha as they improve it, and that
+ *  are skipped once one of them causes a cutoff.  Below the split
+ *  points, each task searches serially with a Search of its thread.
+ *
+ *  Unlike LazySmp, this search takes no result from the transposition
+ *  table in place of searching, and the root resolves ties between
+ *  equally good moves in the order the serial search tries them, so
+ *  every completed iteration gives exactly the move and score that a
+ *  deterministic Search (see EngineConfig.deterministic) would, whatever
+ *  the number of threads and however the tasks are scheduled.
+ *  @author Tara Calista
+ */
+class ForkJoinSearch implements SearchStrategy {
+
+    /** Nodes fewer than SPLIT_PLY plies from the root with at least
+     *  MIN_SPLIT_DEPTH plies left to search are split among threads. */
+    private static final int SPLIT_PLY = 2, MIN_SPLIT_DEPTH = 3;
+
+    /** A search governed by CONFIG, using TABLE and CONFIG.threads
+     *  threads. */
+    ForkJoinSearch(EngineConfig config, TranspositionTable table) {
+        _config = config;
+        _table = table;
+        _workerConfig = config.copy();
+        _workerConfig.deterministic = true;
+        _pool = new ForkJoinPool(Math.max(1, config.threads));
+    }
+
+    /** Return the code of the best move found for the side to move in
+     *  BOARD, or Move.NONE if there is no legal move, searching to
+     *  successively greater depths as for Search.bestMove. */
+    @Override
+    public int bestMove(Board board) {
+        return search(board, true);
+    }
+
+    @Override
+    public int ponder(Board board) {
+        return search(board, false);
+    }
+
+    /** As for bestMove(BOARD), but ignoring the time and node budgets
+     *  unless TIMED. */
+    private int search(Board board, boolean timed) {
+        _stop = false;
+        for (Search worker : _workers) {
+            worker.reset();
+        }
+        _aborted = false;
+        _nodes.reset();
+        _depth = 0;
+        _score = 0;
+        _start = System.nanoTime();
+        timed = timed && !_config.deterministic;
+        _deadline = _config.moveTime > 0 && timed
+            ? _start + _config.moveTime * 1000000L : Long.MAX_VALUE;
+        _nodeLimit = timed ? _config.moveNodes : 0;
+        _table.newSearch();
+
+        Board root = new Board(board);
+        int[] rootMoves = new int[Board.MAX_MOVES];
+        int n = root.gameOver() ? 0 : root.generateMoves(rootMoves);
+        if (n == 0) {
+            return Move.NONE;
+        }
+        int best = rootMoves[0];
+        int limit = Math.min(_config.maxDepth, MAX_PLY - 1);
+        for (int d = 1; d <= limit; d += 1) {
+            int depth = d;
+            _abortable = d > 1;
+            int bestIndex = _pool.invoke(ForkJoinTask.adapt(
+                () -> searchRoot(root, rootMoves, n, depth)));
+            if (_aborted) {
+                break;
+            }
+            best = rootMoves[bestIndex];
+            rootMoves[bestIndex] = rootMoves[0];
+            rootMoves[0] = best;
+            _depth = depth;
+            _score = _iterationScore;
+            Reporter.debug(1, "depth %d: %s score %d (%d nodes, %d ms, "
+                           + "%d threads)", depth, Move.decode(best),
+                           _score, nodes(), elapsed(), threads());
+            Listener listener = _listener;
+            if (listener != null) {
+                listener.iterationDone(depth, best, _score, nodes(),
+                                       elapsed());
+            }
+            if (Math.abs(_score) >= WIN - MAX_PLY) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /** Search the first N moves in MOVES, the moves of ROOT, to DEPTH,
+     *  setting _iterationScore to the value of the best, and return its
+     *  index.  Of equally good moves, returns the first. */
+    private int searchRoot(Board root, int[] moves, int n, int depth) {
+        root.makeMove(moves[0]);
+        int first = -node(root, depth - 1, 1, -INFINITY, INFINITY);
+        root.retract();
+        if (_aborted) {
+            return 0;
+        }
+        AtomicInteger alpha = new AtomicInteger(first);
+        List<Child> rest = new ArrayList<>();
+        for (int i = 1; i < n; i += 1) {
+            rest.add(new Child(root, moves[i], depth - 1, 1, alpha,
+                               INFINITY, new AtomicBoolean(), true));
+        }
+        ForkJoinTask.invokeAll(rest);
+        int best = first, bestIndex = 0;
+        for (int i = 1; i < n; i += 1) {
+            Child child = rest.get(i - 1);
+            if (child.exact() && child.value() > best) {
+                best = child.value();
+                bestIndex = i;
+            }
+        }
+        _iterationScore = best;
+        return bestIndex;
+    }
+
+    /** Return the value for the side to move of POSITION, PLY plies from
+     *  the root, searched to DEPTH plies as for Search.subtree.  POSITION
+     *  belongs to the caller, and is left as it was found. */
+    private int node(Board position, int depth, int ply,
+                     int alpha, int beta) {
+        if (ply >= SPLIT_PLY || depth < MIN_SPLIT_DEPTH) {
+            return serial(position, depth, ply, alpha, beta);
+        }
+        _nodes.increment();
+        Piece turn = position.turn();
+        if (position.piecesContiguous(turn)) {
+            return WIN - ply;
+        } else if (position.piecesContiguous(turn.opposite())) {
+            return -(WIN - ply);
+        }
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = position.generateMoves(moves);
+        if (n == 0) {
+            return serial(position, depth, ply, alpha, beta);
+        }
+        long key = position.key();
+        order(key, moves, n);
+
+        position.makeMove(moves[0]);
+        int best = -node(position, depth - 1, ply + 1, -beta, -alpha);
+        position.retract();
+        if (_aborted) {
+            return 0;
+        }
+        int bestMove = moves[0];
+        if (best < beta && n > 1) {
+            AtomicInteger shared = new AtomicInteger(Math.max(alpha, best));
+            AtomicBoolean cut = new AtomicBoolean();
+            List<Child> rest = new ArrayList<>();
+            for (int i = 1; i < n; i += 1) {
+                rest.add(new Child(position, moves[i], depth - 1, ply + 1,
+                                   shared, beta, cut, false));
+            }
+            ForkJoinTask.invokeAll(rest);
+            if (_aborted) {
+                return 0;
+            }
+            for (Child child : rest) {
+                if (child.searched() && child.value() > best) {
+                    best = child.value();
+                    bestMove = child.move();
+                }
+            }
+        }
+        int bound = best >= beta ? LOWER : best > alpha ? EXACT : UPPER;
+        _table.store(key, bestMove, depth, bound, toTable(best, ply));
+        return best;
+    }
+
+    /** Return the value of POSITION as for node(POSITION, DEPTH, PLY,
+     *  ALPHA, BETA), searched serially by this thread's Search. */
+    private int serial(Board position, int depth, int ply,
+                       int alpha, int beta) {
+        Search worker = _worker.get();
+        int v = worker.subtree(position, depth, ply, alpha, beta,
+                               _abortable, _deadline);
+        _nodes.add(worker.nodes());
+        if (worker.aborted()) {
+            _aborted = true;
+        }
+        return v;
+    }
+
+    /** Put the move suggested by the transposition table for the
+     *  position with KEY, and then the captures, at the front of the
+     *  first N entries of MOVES.  The order of moves affects only the
+     *  speed of the search, never its result. */
+    private void order(long key, int[] moves, int n) {
+        long entry = _table.probe(key);
+        int tableMove =
+            entry == 0 ? Move.NONE : TranspositionTable.move(entry);
+        int front = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (moves[i] == tableMove) {
+                swap(moves, i, front);
+                front += 1;
+                break;
+            }
+        }
+        for (int i = front; i < n; i += 1) {
+            if (Move.isCapture(moves[i])) {
+                swap(moves, i, front);
+                front += 1;
+            }
+        }
+    }
+
+    /** Exchange entries I and J of MOVES. */
+    private static void swap(int[] moves, int i, int j) {
+        int t = moves[i];
+        moves[i] = moves[j];
+        moves[j] = t;
+    }
+
+    /** Set _aborted if the current iteration has used up its budget or
+     *  has been stopped.  The first iteration is never aborted. */
+    private void checkBudget() {
+        if (_abortable
+            && (_stop || System.nanoTime() > _deadline
+                || _nodeLimit > 0 && _nodes.sum() >= _nodeLimit)) {
+            _aborted = true;
+        }
+    }
+
+    /** The search of one move, other than the first, at a split point. */
+    private class Child extends RecursiveAction {
+
+        /** A task that searches MOVE from PARENT to DEPTH plies, PLY
+         *  plies from the root, where ALPHA is the parent's alpha, shared
+         *  among its children, BETA is its beta, and CUT is set once any
+         *  child fails high.  If ATROOT, PARENT is the root, and the
+         *  window is widened by one below ALPHA so that a move as good as
+         *  the best so far is still given an exact value. */
+        Child(Board parent, int move, int depth, int ply,
+              AtomicInteger alpha, int beta, AtomicBoolean cut,
+              boolean atRoot) {
+            _parent = parent;
+            _move = move;
+            _childDepth = depth;
+            _ply = ply;
+            _alpha = alpha;
+            _beta = beta;
+            _cut = cut;
+            _atRoot = atRoot;
+        }
+
+        @Override
+        protected void compute() {
+            checkBudget();
+            if (_aborted || _cut.get()) {
+                return;
+            }
+            _low = _alpha.get() - (_atRoot ? 1 : 0);
+            Board position = new Board(_parent);
+            position.makeMove(_move);
+            int v = -node(position, _childDepth, _ply, -_beta, -_low);
+            if (_aborted) {
+                return;
+            }
+            _value = v;
+            _searched = true;
+            _alpha.accumulateAndGet(v, Math::max);
+            if (v >= _beta) {
+                _cut.set(true);
+            }
+        }
+
+        /** Return true iff I searched my move to completion. */
+        boolean searched() {
+            return _searched;
+        }
+
+        /** Return true iff I found the exact value of my move. */
+        boolean exact() {
+            return _searched && _value > _low && _value < _beta;
+        }
+
+        /** Return the value of my move for the side that made it, if
+         *  searched(). */
+        int value() {
+            return _value;
+        }
+
+        /** Return my move. */
+        int move() {
+            return _move;
+        }
+
+        /** The position from which my move is made. */
+        private final Board _parent;
+        /** The move I search. */
+        private final int _move;
+        /** Plies to search after my move. */
+        private final int _childDepth;
+        /** Plies from the root to the position after my move. */
+        private final int _ply;
+        /** My parent's alpha, shared with my siblings. */
+        private final AtomicInteger _alpha;
+        /** My parent's beta. */
+        private final int _beta;
+        /** Set when any of my siblings fails high. */
+        private final AtomicBoolean _cut;
+        /** True iff my parent is the root. */
+        private final boolean _atRoot;
+        /** The bottom of my search window. */
+        private int _low;
+        /** The value of my move. */
+        private int _value;
+        /** True iff I completed my search. */
+        private boolean _searched;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        _listener = listener;
+    }
+
+    @Override
+    public void stop() {
+        _stop = true;
+        for (Search worker : _workers) {
+            worker.stop();
+        }
+    }
+
+    @Override
+    public int depth() {
+        return _depth;
+    }
+
+    @Override
+    public int score() {
+        return _score;
+    }
+
+    @Override
+    public long nodes() {
+        return _nodes.sum();
+    }
+
+    @Override
+    public long elapsed() {
+        return (System.nanoTime() - _start) / 1000000L;
+    }
+
+    @Override
+    public TranspositionTable table() {
+        return _table;
+    }
+
+    @Override
+    public void report(int level) {
+        _table.report(level);
+        for (Search worker : _workers) {
+            if (worker.evalCache() != null) {
+                worker.evalCache().report(level);
+            }
+        }
+    }
+
+    @Override
+    public int threads() {
+        return _pool.getParallelism();
+    }
+
+    @Override
+    public void shutdown() {
+        _pool.shutdownNow();
+    }
+
+    /** Return a new Search for a pool thread. */
+    private Search newWorker() {
+        Search worker = new Search(_workerConfig, _table);
+        _workers.add(worker);
+        return worker;
+    }
+
+    /** My settings. */
+    private final EngineConfig _config;
+    /** My settings, made deterministic, for the serial searches. */
+    private final EngineConfig _workerConfig;
+    /** The shared transposition table. */
+    private final TranspositionTable _table;
+    /** The threads that search. */
+    private final ForkJoinPool _pool;
+    /** The serial search of each thread. */
+    private final ThreadLocal<Search> _worker =
+        ThreadLocal.withInitial(this::newWorker);
+    /** All the serial searches, so that they can be stopped. */
+    private final ConcurrentLinkedQueue<Search> _workers =
+        new ConcurrentLinkedQueue<>();
+
+    /** Set by stop() to end the search early. */
+    private volatile boolean _stop;
+    /** Told of each completed iteration, or null. */
+    private volatile Listener _listener;
+    /** True when the current iteration has been abandoned. */
+    private volatile boolean _aborted;
+    /** True if the current iteration may be abandoned. */
+    private volatile boolean _abortable;
+    /** Nodes visited by the current search. */
+    private final LongAdder _nodes = new LongAdder();
+    /** Depth and score of the last completed iteration. */
+    private int _depth, _score;
+    /** Score of the best move of the iteration just searched. */
+    private int _iterationScore;
+    /** Times (from System.nanoTime) at which the current search started
+     *  and at which it must finish. */
+    private long _start, _deadline;
+    /** Number of nodes the current search may visit, or 0 for no
+     *  limit. */
+    private long _nodeLimit;
+
+}
@@ -3,6 +3,7 @@ package loa;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.regex.Pattern;
@@ -16,15 +17,35 @@ import static loa.Board.*;
  *  @author Tara Calista */
 class Game {
 
-    /** A new series of Games. */
+    /** A new series of Games, using the default EngineConfig. */
     Game() {
-        _randomSource = new Random();
+        this(new EngineConfig());
+    }
+
+    /** A new series of Games whose automated players use the settings in
+     *  CONFIG, played on the standard input and output. */
+    Game(EngineConfig config) {
+        this(config, new BufferedReader(new InputStreamReader(System.in)),
+             System.out, System.err);
+    }
+
+    /** A new series of Games whose automated players use the settings in
+     *  CONFIG, reading commands from INPUT, and writing prompts and
+     *  results to OUTPUT and error messages and help to ERRORS. */
+    Game(EngineConfig config, BufferedReader input, PrintStream output,
+         PrintStream errors) {
+        _config = config;
+        _seed = new Random().nextLong();
+        _randomSource = new Random(_seed);
 
         _players = new Player[2];
-        _input = new BufferedReader(new InputStreamReader(System.in));
+        _input = input;
+        _output = output;
+        _errors = errors;
         _players[0] = new HumanPlayer(BP, this);
         _players[1] = new MachinePlayer(WP, this);
         _playing = false;
+        _board = new Board();
     }
 
     /** Return the current board. */
@@ -32,9 +53,26 @@ class Game {
         return _board;
     }
 
-    /** Quit the game. */
+    /** Return the settings for automated players. */
+    EngineConfig config() {
+        return _config;
+    }
+
+    /** Record the games I play from the initial position to RECORDER
+     *  from now on, or stop recording if RECORDER is null. */
+    void setRecorder(GameRecorder recorder) {
+        endRecord(null);
+        _recorder = recorder;
+    }
+
+    /** Return the times my automated players have taken to move. */
+    LatencyStats moveLatency() {
+        return _moveLatency;
+    }
+
+    /** Quit the game, so that play() returns. */
     private void quit() {
-        System.exit(0);
+        _quit = true;
     }
 
     /** Return a move.  Processes any other intervening commands as
@@ -42,12 +80,13 @@ class Game {
     Move getMove() {
         try {
             boolean playing0 = _playing;
-            while (_playing == playing0) {
+            while (_playing == playing0 && !_quit) {
                 prompt();
 
                 String line = _input.readLine();
                 if (line == null) {
                     quit();
+                    break;
                 }
 
                 line = line.trim();
@@ -65,15 +104,16 @@ class Game {
                 }
             }
         } catch (IOException excp) {
-            error(1, "unexpected I/O error on input");
+            error("unexpected I/O error on input%n");
+            quit();
         }
         return null;
     }
 
     /** Print a prompt for a move. */
     private void prompt() {
-        System.out.print("> ");
-        System.out.flush();
+        _output.print("> ");
+        _output.flush();
     }
 
     /** Describes a command with up to two arguments. */
@@ -95,7 +135,8 @@ class Game {
                 manualCommand(command.group(2).toLowerCase());
                 return true;
             case "auto":
-                autoCommand(command.group(2).toLowerCase());
+                autoCommand(command.group(2).toLowerCase(),
+                            command.group(3).toLowerCase());
                 return true;
             case "seed":
                 seedCommand(command.group(2));
@@ -105,6 +146,7 @@ class Game {
                 return true;
             case "start":
                 _playing = true;
+                beginRecord();
                 return true;
             case "quit":
                 quit();
@@ -118,7 +160,7 @@ class Game {
                 _board.set(n1, n2, p1, p1.opposite());
                 return true;
             case "dump":
-                System.out.println(_board);
+                _output.println(_board);
                 return true;
             case "help":
                 help();
@@ -135,18 +177,27 @@ class Game {
         try {
             Piece s = Piece.playerValueOf(player);
             _playing = false;
+            _players[s.ordinal()].release();
             _players[s.ordinal()] = new HumanPlayer(s, this);
         } catch (IllegalArgumentException excp) {
             error("unknown player: %s", player);
         }
     }
 
-    /** Set player PLAYER ("white" or "black") to be an automated player. */
-    private void autoCommand(String player) {
+    /** Set player PLAYER ("white" or "black") to be an automated player
+     *  using ENGINE: "search" or "" for a MachinePlayer, "mcts" for an
+     *  MctsPlayer. */
+    private void autoCommand(String player, String engine) {
+        if (!engine.matches("|search|mcts")) {
+            error("unknown engine: %s", engine);
+            return;
+        }
         try {
             Piece s = Piece.playerValueOf(player);
             _playing = false;
-            _players[s.ordinal()] = new MachinePlayer(s, this);
+            _players[s.ordinal()].release();
+            _players[s.ordinal()] = engine.equals("mcts")
+                ? new MctsPlayer(s, this) : new MachinePlayer(s, this);
         } catch (IllegalArgumentException excp) {
             error("unknown player: %s", player);
         }
@@ -155,18 +206,23 @@ class Game {
     /** Seed random-number generator with SEED (as a long). */
     private void seedCommand(String seed) {
         try {
-            _randomSource.setSeed(Long.parseLong(seed));
+            _seed = Long.parseLong(seed);
+            _randomSource.setSeed(_seed);
         } catch (NumberFormatException excp) {
             error("Invalid number: %s", seed);
         }
     }
 
-    /** Play this game, printing any results. */
+    /** Play this game, printing any results, until the quit command or
+     *  the end of the input. */
     public void play() {
         HashSet<Board> positionsPlayed = new HashSet<Board>();
         _board = new Board();
 
-        while (true) {
+        while (!_quit) {
+            if (!_playing) {
+                endRecord(null);
+            }
             int playerInd = _board.turn().ordinal();
             Move next;
             if (_playing) {
@@ -175,7 +231,12 @@ class Game {
                     _playing = false;
                     continue;
                 }
-                next = _players[playerInd].makeMove();
+                Player player = _players[playerInd];
+                long start = System.nanoTime();
+                next = player.makeMove();
+                if (!(player instanceof HumanPlayer)) {
+                    _moveLatency.record(System.nanoTime() - start);
+                }
             } else {
                 getMove();
                 next = null;
@@ -183,22 +244,90 @@ class Game {
             if (next != null) {
                 assert _board.isLegal(next);
                 _board.makeMove(next);
+                recordMove(next);
                 if (_board.gameOver()) {
                     announceWinner();
                     _playing = false;
                 }
             }
         }
+        endRecord(null);
+        for (Player player : _players) {
+            player.release();
+        }
+    }
+
+    /** Begin recording the game being started, if I have a recorder, am
+     *  not recording already, and the game starts from the initial
+     *  position. */
+    private void beginRecord() {
+        if (_recorder == null || _recording
+            || !_board.equals(new Board())) {
+            return;
+        }
+        try {
+            _recorder.begin(_seed, kind(_players[BP.ordinal()]),
+                            kind(_players[WP.ordinal()]));
+            _recording = true;
+        } catch (IOException excp) {
+            recordFailed(excp);
+        }
+    }
+
+    /** Record MOVE in the game being recorded, if any. */
+    private void recordMove(Move move) {
+        if (_recording) {
+            try {
+                _recorder.move(move.code());
+            } catch (IOException excp) {
+                recordFailed(excp);
+            }
+        }
+    }
+
+    /** End the game being recorded, if any, as won by WINNER (null for
+     *  none). */
+    private void endRecord(Piece winner) {
+        if (_recording) {
+            _recording = false;
+            try {
+                _recorder.end(winner);
+            } catch (IOException excp) {
+                recordFailed(excp);
+            }
+        }
+    }
+
+    /** Report EXCP, a failure to record, and stop recording. */
+    private void recordFailed(IOException excp) {
+        error("cannot record game: %s%n", excp.getMessage());
+        _recorder = null;
+        _recording = false;
+    }
+
+    /** Return the kind of PLAYER, as recorded by GameRecorder. */
+    private static int kind(Player player) {
+        if (player instanceof HumanPlayer) {
+            return GameRecords.HUMAN;
+        } else if (player instanceof MachinePlayer) {
+            return GameRecords.SEARCH;
+        } else if (player instanceof MctsPlayer) {
+            return GameRecords.MCTS;
+        }
+        return GameRecords.UNKNOWN;
     }
 
-    /** Print an announcement of the winner. */
+    /** Print an announcement of the winner, and stop the players'
+     *  background work. */
     private void announceWinner() {
-        if (_board.piecesContiguous(BP) && _board.piecesContiguous(WP)) {
-            System.out.println(_board.turn().fullName() + " wins.");
-        } else if (_board.piecesContiguous(BP)) {
-            System.out.println("black wins.");
-        } else if (_board.piecesContiguous(WP)) {
-            System.out.println("white wins.");
+        for (Player player : _players) {
+            player.stopThinking();
+        }
+        Piece winner = _board.winner();
+        endRecord(winner);
+        if (winner != null) {
+            _output.println(winner.fullName() + " wins.");
+            _output.flush();
         }
     }
 
@@ -210,9 +339,19 @@ class Game {
 
     /** Print a help message. */
     void help() {
-        Main.printResource("loa/help.txt");
+        Main.printResource("loa/help.txt", _errors);
+    }
+
+    /** Report an error, with FORMAT and ARGS as for printf. */
+    private void error(String format, Object... args) {
+        _errors.print("Error: ");
+        _errors.printf(format, args);
+        _errors.flush();
     }
 
+    /** Settings for automated players. */
+    private final EngineConfig _config;
+
     /** The official game board. */
     private Board _board;
 
@@ -223,9 +362,27 @@ class Game {
      *  any Game with the same seed value. */
     private Random _randomSource;
 
+    /** The seed last given to _randomSource. */
+    private long _seed;
+
+    /** Where games are recorded, or null. */
+    private GameRecorder _recorder;
+
+    /** True while the game being played is being recorded. */
+    private boolean _recording;
+
     /** Input source. */
     private BufferedReader _input;
 
+    /** Destinations of prompts and results, and of error messages. */
+    private final PrintStream _output, _errors;
+
+    /** Times taken by automated players to move. */
+    private final LatencyStats _moveLatency = new LatencyStats();
+
+    /** True once the quit command or the end of the input is read. */
+    private boolean _quit;
+
     /** True if actually playing (game started and not stopped or finished).
      */
     private boolean _playing;
@@ -0,0 +1,137 @@
+package loa;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static loa.GameRecords.*;
+
+/** Appends games to a record file in the format read by GameRecords,
+ *  creating it if need be.  A game may be written move by move as it is
+ *  played (begin, move, end), or all at once (write), which is how
+ *  several threads can share one GameRecorder: their whole games never
+ *  interleave.  Records are buffered, and written at the end of each
+ *  game and whenever the buffer fills.
+ *  @author Tara Calista
+ */
+class GameRecorder implements Closeable {
+
+    /** Size in bytes of the buffer of records not yet written. */
+    static final int BUFFER = 1 << 14;
+
+    /** A GameRecorder appending to FILE.  Throws IOException if FILE
+     *  exists but is not a record file.  A partial record or game header
+     *  at the end of FILE (left by a writer that died) is removed first,
+     *  so that the games appended are readable. */
+    GameRecorder(Path file) throws IOException {
+        _channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE);
+        try {
+            long size = _channel.size();
+            if (size == 0) {
+                _buffer.putInt(MAGIC).putInt(VERSION);
+                flush();
+            } else {
+                long end = new GameRecords(file).end();
+                if (end < size) {
+                    _channel.truncate(end);
+                }
+            }
+        } catch (IOException excp) {
+            _channel.close();
+            throw excp;
+        }
+    }
+
+    /** Begin a game from the initial position, with seed SEED, between
+     *  players of the kinds (see GameRecords) BLACK and WHITE. */
+    synchronized void begin(long seed, int black, int white)
+        throws IOException {
+        if (_playing) {
+            throw new IllegalStateException("game already begun");
+        }
+        reserve(GAME_HEADER);
+        _buffer.putShort((short) START).putLong(seed)
+            .put((byte) black).put((byte) white);
+        _playing = true;
+    }
+
+    /** Record the move with code MOVE in the game begun. */
+    synchronized void move(int move) throws IOException {
+        if (!_playing) {
+            throw new IllegalStateException("no game begun");
+        }
+        reserve(2);
+        _buffer.putShort((short) move);
+    }
+
+    /** End the game begun, won by WINNER, or by no one if WINNER is
+     *  null, and write its records out. */
+    synchronized void end(Piece winner) throws IOException {
+        if (!_playing) {
+            throw new IllegalStateException("no game begun");
+        }
+        reserve(2);
+        _buffer.putShort((short) (END + (winner == null ? 2
+                                         : winner.ordinal())));
+        _playing = false;
+        flush();
+    }
+
+    /** Return true iff a game has been begun but not ended. */
+    synchronized boolean playing() {
+        return _playing;
+    }
+
+    /** Record a whole game, as for begin(SEED, BLACK, WHITE), move for
+     *  each of the first N codes in MOVES, and end(WINNER). */
+    synchronized void write(long seed, int black, int white, int[] moves,
+                            int n, Piece winner) throws IOException {
+        begin(seed, black, white);
+        for (int k = 0; k < n; k += 1) {
+            move(moves[k]);
+        }
+        end(winner);
+    }
+
+    /** End any game begun, with no winner, and close the file. */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (_playing) {
+                end(null);
+            }
+        } finally {
+            _channel.close();
+        }
+    }
+
+    /** Make room for N bytes in the buffer. */
+    private void reserve(int n) throws IOException {
+        if (_buffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    /** Append the buffer's contents to the file and empty it. */
+    private void flush() throws IOException {
+        _buffer.flip();
+        long position = _channel.size();
+        while (_buffer.hasRemaining()) {
+            position += _channel.write(_buffer, position);
+        }
+        _buffer.clear();
+    }
+
+    /** The file. */
+    private final FileChannel _channel;
+    /** Records not yet written. */
+    private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER);
+    /** True while a game is begun but not ended. */
+    private boolean _playing;
+
+}
@@ -0,0 +1,246 @@
+package loa;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static loa.Piece.*;
+
+/** A read-only file of recorded games, as written by GameRecorder.  Run
+ *  as
+ *      java loa.GameRecords FILE
+ *  to print the games in FILE as text (see export).
+ *
+ *  A record file is a header of HEADER bytes (the ints MAGIC and
+ *  VERSION) followed by 2-byte (big-endian) records.  A move is recorded
+ *  as its code, which is less than Move.CODES, so the codes with the top
+ *  bit set are free to mark the boundaries of games:
+ *      START   Begins a game, and is followed by the game's seed (a long)
+ *              and two bytes giving the kinds of player (HUMAN, SEARCH,
+ *              MCTS or UNKNOWN) that played black and white.  Then come
+ *              the moves of the game from the initial position.
+ *      END + R Ends a game, where R is the ordinal of the winning side,
+ *              or 2 if there is none (the game was drawn or abandoned).
+ *  Games are only ever appended.  A game that is not ended (because its
+ *  writer died, say) counts as unfinished, and a partial record or game
+ *  header at the end of the file is ignored, so a file is readable
+ *  however its writing stopped.
+ *
+ *  The file is mapped into memory, not read onto the heap, and indexed
+ *  in one pass when opened; after that, replaying a game costs only its
+ *  moves, so millions of games can be replayed in a minute (see
+ *  replay).  A GameRecords may be shared by any number of threads.
+ *  @author Tara Calista
+ */
+class GameRecords {
+
+    /** First int of every record file ("LOAG"). */
+    static final int MAGIC = 0x4c4f4147;
+
+    /** Version of the file format. */
+    static final int VERSION = 1;
+
+    /** Size in bytes of the file header. */
+    static final int HEADER = 8;
+
+    /** The record that starts a game, and the first of the records that
+     *  end one. */
+    static final int START = 0xffff, END = 0x8000;
+
+    /** Size in bytes of the START record and the game header after it. */
+    static final int GAME_HEADER = 12;
+
+    /** Kinds of player. */
+    static final int UNKNOWN = 0, HUMAN = 1, SEARCH = 2, MCTS = 3;
+
+    /** Names of the kinds of player, indexed by kind. */
+    static final String[] KINDS = { "unknown", "human", "search", "mcts" };
+
+    /** Print the games in the file ARGS[0] as text. */
+    public static void main(String... args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java loa.GameRecords FILE");
+            System.exit(1);
+        }
+        try {
+            PrintWriter out = new PrintWriter(System.out);
+            new GameRecords(Path.of(args[0])).export(out);
+            out.flush();
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** The games recorded in FILE. */
+    GameRecords(Path file) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER || length > Integer.MAX_VALUE) {
+                throw new IOException("not a game record file: " + file);
+            }
+            _data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        if (_data.getInt(0) != MAGIC || _data.getInt(4) != VERSION) {
+            throw new IOException("not a game record file: " + file);
+        }
+        index(file);
+    }
+
+    /** Return true iff FILE starts as a record file does. */
+    static boolean isRecordFile(Path file) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                continue;
+            }
+            return !header.hasRemaining() && header.getInt(0) == MAGIC;
+        }
+    }
+
+    /** Find the games in my data, which came from FILE. */
+    private void index(Path file) throws IOException {
+        int end = HEADER + (_data.capacity() - HEADER) / 2 * 2;
+        int n = 0;
+        for (int p = HEADER; p < end;) {
+            if ((_data.getShort(p) & 0xffff) != START) {
+                throw new IOException(String.format("corrupt game record "
+                                                    + "file %s at byte %d",
+                                                    file, p));
+            } else if (p + GAME_HEADER > end) {
+                end = p;
+                break;
+            }
+            if (n == _offsets.length) {
+                _offsets = Arrays.copyOf(_offsets, 2 * n);
+                _lengths = Arrays.copyOf(_lengths, 2 * n);
+                _results = Arrays.copyOf(_results, 2 * n);
+            }
+            int first = p + GAME_HEADER, q = first;
+            while (q < end && (_data.getShort(q) & END) == 0) {
+                q += 2;
+            }
+            int result = q < end ? _data.getShort(q) & 0xffff : START;
+            _offsets[n] = first;
+            _lengths[n] = (q - first) / 2;
+            if (result == START) {
+                _results[n] = UNFINISHED;
+                p = q;
+            } else if (result >= END && result <= END + 2) {
+                _results[n] = (byte) (result - END);
+                p = q + 2;
+            } else {
+                throw new IOException(String.format("corrupt game record "
+                                                    + "file %s at byte %d",
+                                                    file, q));
+            }
+            n += 1;
+        }
+        _size = n;
+        _end = end;
+    }
+
+    /** Return the length of the file up to the end of its last whole
+     *  record, not counting any partial record or game header. */
+    int end() {
+        return _end;
+    }
+
+    /** Return the number of games. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the seed recorded for game G. */
+    long seed(int g) {
+        return _data.getLong(_offsets[g] - GAME_HEADER + 2);
+    }
+
+    /** Return the kind of player that played SIDE in game G. */
+    int player(int g, Piece side) {
+        return _data.get(_offsets[g] - 2 + side.ordinal());
+    }
+
+    /** Return true iff game G was ended by its writer. */
+    boolean finished(int g) {
+        return _results[g] != UNFINISHED;
+    }
+
+    /** Return the winner of game G, or null if it has none. */
+    Piece winner(int g) {
+        return _results[g] == BP.ordinal() ? BP
+            : _results[g] == WP.ordinal() ? WP : null;
+    }
+
+    /** Return the number of moves in game G. */
+    int length(int g) {
+        return _lengths[g];
+    }
+
+    /** Return the code of move K of game G. */
+    int move(int g, int k) {
+        return _data.getShort(_offsets[g] + 2 * k);
+    }
+
+    /** Return the codes of the moves of game G. */
+    int[] moves(int g) {
+        int[] result = new int[_lengths[g]];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = move(g, k);
+        }
+        return result;
+    }
+
+    /** Set BOARD to the position at the end of game G, with the game's
+     *  moves as its history.  The moves are assumed to be legal, as they
+     *  are when written by GameRecorder. */
+    void replay(int g, Board board) {
+        board.copyFrom(INITIAL);
+        for (int k = 0, n = _lengths[g], p = _offsets[g]; k < n;
+             k += 1, p += 2) {
+            board.makeMove(_data.getShort(p));
+        }
+    }
+
+    /** Write my games to OUT as text: for each game, a comment line
+     *  giving its number, seed, players and result, and then a line of its
+     *  moves, as in the games files read by BookBuilder. */
+    void export(PrintWriter out) {
+        for (int g = 0; g < _size; g += 1) {
+            Piece winner = winner(g);
+            out.printf("# game %d seed %d black %s white %s result %s%n", g,
+                       seed(g), KINDS[player(g, BP)], KINDS[player(g, WP)],
+                       !finished(g) ? "unfinished"
+                       : winner == null ? "none"
+                       : winner.fullName().toLowerCase());
+            BookBuilder.writeGame(out, moves(g));
+        }
+    }
+
+    /** Value of _results for a game that was never ended. */
+    private static final byte UNFINISHED = -1;
+
+    /** The initial position, copied to start each replay. */
+    private static final Board INITIAL = new Board();
+
+    /** The mapped file.  Only absolute gets are used, so threads do not
+     *  disturb one another. */
+    private final ByteBuffer _data;
+    /** Number of games. */
+    private int _size;
+    /** Value of end(). */
+    private int _end;
+    /** Byte offsets of the first moves of the games. */
+    private int[] _offsets = new int[16];
+    /** Numbers of moves in the games. */
+    private int[] _lengths = new int[16];
+    /** Ordinals of the winners of the games, 2 if none, or UNFINISHED. */
+    private byte[] _results = new byte[16];
+
+}
@@ -0,0 +1,228 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static loa.Piece.*;
+
+/** Tests of GameRecorder and GameRecords.
+ *  @author Tara Calista
+ */
+public class GameRecordsTest {
+
+    /** Return the board after the moves with the codes in GAME. */
+    static Board play(int[] game) {
+        Board board = new Board();
+        for (int move : game) {
+            board.makeMove(move);
+        }
+        return board;
+    }
+
+    @Test
+    public void recordAndReplay() throws IOException {
+        List<int[]> games = OpeningBookTest.randomGames(3, 200);
+        Path file = Files.createTempFile("loa", ".rec");
+        Files.delete(file);
+        try {
+            try (GameRecorder recorder = new GameRecorder(file)) {
+                recorder.begin(42, GameRecords.HUMAN, GameRecords.SEARCH);
+                for (int move : games.get(0)) {
+                    recorder.move(move);
+                }
+                recorder.end(play(games.get(0)).winner());
+                recorder.write(-7, GameRecords.MCTS, GameRecords.UNKNOWN,
+                               games.get(1), 10, null);
+            }
+            try (GameRecorder recorder = new GameRecorder(file)) {
+                recorder.write(1L << 40, GameRecords.SEARCH,
+                               GameRecords.SEARCH, games.get(2),
+                               games.get(2).length,
+                               play(games.get(2)).winner());
+            }
+            GameRecords records = new GameRecords(file);
+            assertEquals(3, records.size());
+            assertEquals(42, records.seed(0));
+            assertEquals(-7, records.seed(1));
+            assertEquals(1L << 40, records.seed(2));
+            assertEquals(GameRecords.HUMAN, records.player(0, BP));
+            assertEquals(GameRecords.SEARCH, records.player(0, WP));
+            assertEquals(GameRecords.MCTS, records.player(1, BP));
+            assertArrayEquals(games.get(0), records.moves(0));
+            assertEquals(10, records.length(1));
+            assertNull(records.winner(1));
+            assertTrue(records.finished(1));
+            assertArrayEquals(games.get(2), records.moves(2));
+
+            Board board = new Board();
+            for (int g : new int[] { 0, 2 }) {
+                records.replay(g, board);
+                Board expected = play(games.get(g));
+                assertEquals(expected, board);
+                assertEquals(expected.movesMade(), board.movesMade());
+                assertEquals(expected.winner(), records.winner(g));
+            }
+
+            StringWriter text = new StringWriter();
+            records.export(new PrintWriter(text));
+            assertTrue(text.toString().startsWith("# game 0 seed 42 black "
+                                                  + "human white search"));
+            Path games2 = Files.createTempFile("loa", ".games");
+            try {
+                Files.writeString(games2, text.toString());
+                List<int[]> read = BookBuilder.readGames(games2);
+                List<int[]> direct = BookBuilder.readGames(file);
+                assertEquals(3, read.size());
+                for (int g = 0; g < 3; g += 1) {
+                    assertArrayEquals(records.moves(g), read.get(g));
+                    assertArrayEquals(records.moves(g), direct.get(g));
+                }
+            } finally {
+                Files.delete(games2);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void truncatedFilesAreReadable() throws IOException {
+        List<int[]> games = OpeningBookTest.randomGames(2, 30);
+        Path file = Files.createTempFile("loa", ".rec");
+        Files.delete(file);
+        try {
+            try (GameRecorder recorder = new GameRecorder(file)) {
+                for (int[] game : games) {
+                    recorder.write(0, GameRecords.SEARCH, GameRecords.SEARCH,
+                                   game, game.length, null);
+                }
+            }
+            long size = Files.size(file);
+            truncate(file, size - 3);
+            GameRecords records = new GameRecords(file);
+            assertEquals(2, records.size());
+            assertTrue(records.finished(0));
+            assertFalse(records.finished(1));
+            assertEquals(games.get(1).length - 1, records.length(1));
+            truncate(file, GameRecords.HEADER + 4);
+            assertEquals(0, new GameRecords(file).size());
+
+            try (GameRecorder recorder = new GameRecorder(file)) {
+                recorder.begin(3, GameRecords.HUMAN, GameRecords.HUMAN);
+                recorder.move(games.get(0)[0]);
+            }
+            records = new GameRecords(file);
+            assertEquals(1, records.size());
+            assertEquals(1, records.length(0));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("loa", ".games");
+        try {
+            Files.writeString(file, "d1-d3 d3-d5 and so on\n");
+            assertFalse(GameRecords.isRecordFile(file));
+            try {
+                new GameRecords(file);
+                fail("other file read");
+            } catch (IOException excp) {
+                /* Expected. */
+            }
+            try {
+                new GameRecorder(file).close();
+                fail("other file appended to");
+            } catch (IOException excp) {
+                /* Expected. */
+            }
+            assertEquals("d1-d3 d3-d5 and so on\n", Files.readString(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void gameRecordsItsGames() throws IOException {
+        EngineConfig config = new EngineConfig();
+        config.moveTime = 0;
+        config.maxDepth = 1;
+        config.solver = false;
+        Path file = Files.createTempFile("loa", ".rec");
+        Files.delete(file);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(output, true);
+            Game game = new Game(config, new BufferedReader(
+                                     new StringReader("seed 9\nauto black\n"
+                                                      + "start\n")),
+                                 out, out);
+            try (GameRecorder recorder = new GameRecorder(file)) {
+                game.setRecorder(recorder);
+                game.play();
+            }
+            GameRecords records = new GameRecords(file);
+            assertEquals(1, records.size());
+            assertEquals(9, records.seed(0));
+            assertEquals(GameRecords.SEARCH, records.player(0, BP));
+            assertEquals(GameRecords.SEARCH, records.player(0, WP));
+            Board board = new Board();
+            records.replay(0, board);
+            assertTrue(board.gameOver());
+            assertEquals(board.winner(), records.winner(0));
+            assertTrue(output.toString().contains(
+                           board.winner().fullName() + " wins."));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void selfPlayAppendsToEmptyRecordFile() throws IOException {
+        EngineConfig config = new EngineConfig();
+        config.moveTime = 0;
+        config.maxDepth = 1;
+        config.solver = false;
+        Path file = Files.createTempFile("loa", ".rec");
+        Files.delete(file);
+        try {
+            new GameRecorder(file).close();
+            assertEquals(GameRecords.HEADER, Files.size(file));
+            BookBuilder.appendGames(file, 2, config);
+            BookBuilder.appendGames(file, 1, config);
+            GameRecords records = new GameRecords(file);
+            assertEquals(3, records.size());
+            for (int g = 0; g < 3; g += 1) {
+                assertTrue(records.finished(g));
+                assertEquals(g, records.seed(g));
+                assertEquals(BookBuilder.winner(records.moves(g)),
+                             records.winner(g));
+            }
+            assertEquals(3, BookBuilder.readGames(file).size());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Cut FILE down to SIZE bytes. */
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+package loa;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Plays any number of independent games of Lines of Action with clients
+ *  connected over TCP to a port on the loopback interface.  Run with
+ *  java loa.Main --server=PORT.  Each connection is a session: a Game of
+ *  its own, taking the same commands as the console program from the
+ *  connection and writing prompts, results and errors back to it, until
+ *  the client sends quit or closes the connection.
+ *
+ *  The sessions' automated players share one EnginePool, so however many
+ *  sessions there are, at most its size are thinking at once, and only
+ *  its engines hold search tables.  Each session runs on a thread of its
+ *  own with a small stack (SESSION_STACK): a session waiting for its
+ *  client costs little more than that stack.  (Virtual threads would
+ *  cost less still, but need Java 21.)  For each session, the server
+ *  keeps the times its automated players took to move, including any
+ *  wait for an engine.  Main.serve reads commands for the server (see
+ *  console) from the standard input, so that these can be printed
+ *  while it runs.
+ *  @author Tara Calista
+ */
+class GameServer {
+
+    /** Bytes of stack requested for each session's thread.  The deepest
+     *  recursion on it is the search, which is shallow. */
+    static final long SESSION_STACK = 256 * 1024;
+
+    /** A server whose games' automated players use CONFIG (whose
+     *  EngineConfig.engines is replaced and pondering turned off), sharing
+     *  ENGINES engines, and that reports each session's end on LOG unless
+     *  it is null. */
+    GameServer(EngineConfig config, int engines, PrintStream log) {
+        _pool = new EnginePool(config, engines);
+        _config = config.copy();
+        _config.engines = _pool;
+        _config.ponder = false;
+        _log = log;
+    }
+
+    /** Start accepting connections on PORT of the loopback interface (any
+     *  free port if PORT is 0), on a new thread. */
+    void start(int port) throws IOException {
+        _listener = new ServerSocket();
+        _listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                             port));
+        Thread acceptor = new Thread(this::accept, "loa-server");
+        acceptor.start();
+    }
+
+    /** Return the port I accept connections on. */
+    int port() {
+        return _listener.getLocalPort();
+    }
+
+    /** Stop accepting connections, and close those of all sessions,
+     *  which then end. */
+    void close() throws IOException {
+        _listener.close();
+        for (Session session : _sessions.values()) {
+            session.close();
+        }
+    }
+
+    /** Return the engines shared by my sessions. */
+    EnginePool engines() {
+        return _pool;
+    }
+
+    /** Return the sessions in progress. */
+    List<Session> sessions() {
+        return new ArrayList<>(_sessions.values());
+    }
+
+    /** Print a line for each session in progress, and one for the engine
+     *  pool, on OUT. */
+    void report(PrintStream out) {
+        for (Session session : sessions()) {
+            out.println(session);
+        }
+        out.printf("engines: %d of %d idle; waits %s%n", _pool.idle(),
+                   _pool.size(), _pool.waits());
+    }
+
+    /** Read commands from INPUT, writing replies to OUT, until INPUT
+     *  ends or the command quit, which also closes me.  Return true iff
+     *  quit was read.  The command report prints report(OUT). */
+    boolean console(BufferedReader input, PrintStream out)
+        throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            switch (line.trim()) {
+            case "":
+                break;
+            case "report":
+                report(out);
+                break;
+            case "quit":
+                close();
+                return true;
+            default:
+                out.printf("Error: unknown command: %s (report or quit)%n",
+                           line.trim());
+                break;
+            }
+        }
+        return false;
+    }
+
+    /** Accept connections, starting a session for each, until my socket
+     *  is closed. */
+    private void accept() {
+        while (!_listener.isClosed()) {
+            Socket socket;
+            try {
+                socket = _listener.accept();
+            } catch (IOException excp) {
+                if (!_listener.isClosed()) {
+                    Reporter.debug(1, "accept failed: %s", excp.getMessage());
+                }
+                continue;
+            }
+            try {
+                Session session =
+                    new Session(_nextId.incrementAndGet(), socket);
+                _sessions.put(session.id(), session);
+                new Thread(null, session, "loa-session-" + session.id(),
+                           SESSION_STACK).start();
+            } catch (IOException excp) {
+                Reporter.debug(1, "cannot start session: %s",
+                               excp.getMessage());
+                try {
+                    socket.close();
+                } catch (IOException closeExcp) {
+                    Reporter.debug(1, "closing connection: %s",
+                                   closeExcp.getMessage());
+                }
+            }
+        }
+    }
+
+    /** One client's connection and Game. */
+    class Session implements Runnable {
+
+        /** Session number ID, on SOCKET. */
+        Session(int id, Socket socket) throws IOException {
+            _id = id;
+            _socket = socket;
+            _client = socket.getRemoteSocketAddress();
+            PrintStream output =
+                new PrintStream(new BufferedOutputStream(
+                                    socket.getOutputStream()), true);
+            _game = new Game(_config, new BufferedReader(
+                                 new InputStreamReader(
+                                     socket.getInputStream())),
+                             output, output);
+            _start = System.nanoTime();
+        }
+
+        /** Play my game until the client quits or disconnects. */
+        @Override
+        public void run() {
+            try {
+                _game.play();
+            } catch (RuntimeException excp) {
+                Reporter.debug(1, "session %d failed: %s", _id, excp);
+            } finally {
+                _sessions.remove(_id);
+                close();
+                if (_log != null) {
+                    _log.printf("%s: ended%n", this);
+                }
+            }
+        }
+
+        /** Return my session number. */
+        int id() {
+            return _id;
+        }
+
+        /** Return the times my game's automated players took to move. */
+        LatencyStats moveLatency() {
+            return _game.moveLatency();
+        }
+
+        /** Close my connection. */
+        void close() {
+            try {
+                _socket.close();
+            } catch (IOException excp) {
+                Reporter.debug(1, "closing session %d: %s", _id,
+                               excp.getMessage());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("session %d (%s, %d s): %s", _id, _client,
+                                 (System.nanoTime() - _start) / 1000000000L,
+                                 moveLatency());
+        }
+
+        /** My session number. */
+        private final int _id;
+        /** My connection. */
+        private final Socket _socket;
+        /** The client's address. */
+        private final SocketAddress _client;
+        /** My game. */
+        private final Game _game;
+        /** Value of System.nanoTime() when I began. */
+        private final long _start;
+    }
+
+    /** The configuration of all sessions' automated players. */
+    private final EngineConfig _config;
+    /** Engines shared by all sessions. */
+    private final EnginePool _pool;
+    /** Where session ends are reported, or null. */
+    private final PrintStream _log;
+    /** The socket accepting connections. */
+    private ServerSocket _listener;
+    /** Sessions in progress, by number. */
+    private final ConcurrentHashMap<Integer, Session> _sessions =
+        new ConcurrentHashMap<>();
+    /** Number of the last session started. */
+    private final AtomicInteger _nextId = new AtomicInteger();
+
+}
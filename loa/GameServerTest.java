@@ -0,0 +1,181 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of GameServer, EnginePool and LatencyStats.
+ *  @author Tara Calista
+ */
+public class GameServerTest {
+
+    /** Number of simultaneous clients. */
+    private static final int CLIENTS = 4;
+
+    /** Milliseconds clients wait for output before failing. */
+    private static final int TIMEOUT = 30000;
+
+    /** Play a game between two automated players in a session on the
+     *  server listening on PORT, and return the session's output up to
+     *  the announcement of the winner, after checking that the server
+     *  closes the connection when the client quits. */
+    static String playOnServer(int port) throws Exception {
+        try (Socket socket =
+             new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(TIMEOUT);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream()));
+            out.println("auto black");
+            out.println("start");
+            StringBuilder transcript = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                transcript.append(line).append('\n');
+                if (line.endsWith(" wins.")) {
+                    break;
+                }
+            }
+            out.println("quit");
+            while (in.readLine() != null) {
+                continue;
+            }
+            return transcript.toString();
+        }
+    }
+
+    @Test
+    public void sessionsAreIndependentAndShareEngines() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.moveTime = 0;
+        config.maxDepth = 1;
+        GameServer server = new GameServer(config, 1, null);
+        server.start(0);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<String>> games = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i += 1) {
+                games.add(clients.submit(() -> playOnServer(server.port())));
+            }
+            for (Future<String> game : games) {
+                String transcript = game.get(60, TimeUnit.SECONDS);
+                assertTrue(transcript, transcript.endsWith(" wins.\n"));
+            }
+            for (int k = 0; k < 100 && !server.sessions().isEmpty(); k += 1) {
+                Thread.sleep(50);
+            }
+            assertTrue(server.sessions().isEmpty());
+            assertEquals(1, server.engines().idle());
+            assertTrue(server.engines().waits().count() > CLIENTS);
+        } finally {
+            clients.shutdownNow();
+            server.close();
+        }
+    }
+
+    @Test
+    public void sessionsReportLatency() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.moveTime = 0;
+        config.maxDepth = 1;
+        GameServer server = new GameServer(config, 1, null);
+        server.start(0);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        server.port())) {
+            socket.setSoTimeout(TIMEOUT);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream()));
+            out.println("start");
+            out.println("b1-b3");
+            out.println("dump");
+            String line;
+            while (!(line = in.readLine()).startsWith("Next move")) {
+                continue;
+            }
+            assertTrue(line, line.endsWith("black"));
+            assertEquals(1, server.sessions().size());
+            LatencyStats latency = server.sessions().get(0).moveLatency();
+            assertEquals(1, latency.count());
+            assertTrue(latency.max() > 0);
+            out.println("nonsense");
+            while (!(line = in.readLine()).contains("Error:")) {
+                continue;
+            }
+            assertTrue(line, line.contains("invalid move: nonsense"));
+
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            PrintStream console = new PrintStream(report, true);
+            assertFalse(server.console(new BufferedReader(
+                                           new StringReader("report\nhelp\n")),
+                                       console));
+            String text = report.toString();
+            assertTrue(text, text.startsWith("session 1 ("));
+            assertTrue(text, text.contains("engines: 1 of 1 idle"));
+            assertTrue(text, text.contains("Error: unknown command: help"));
+            assertTrue(server.console(new BufferedReader(
+                                          new StringReader("quit\nreport\n")),
+                                      console));
+            while (in.readLine() != null) {
+                continue;
+            }
+            assertEquals(text, report.toString());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void mctsPlayersUsePooledTrees() {
+        EngineConfig config = new EngineConfig();
+        config.moveTime = 0;
+        config.moveNodes = 200;
+        config.mctsNodes = 1 << 12;
+        EnginePool pool = new EnginePool(config, 1);
+        config.engines = pool;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        Game game = new Game(config, new BufferedReader(
+                                 new StringReader("auto black mcts\n"
+                                                  + "auto white mcts\n"
+                                                  + "start\n")),
+                             out, out);
+        game.play();
+        assertTrue(output.toString(), output.toString().contains(" wins."));
+        EnginePool.Engine engine = pool.acquire();
+        assertTrue(engine.tree().rootVisits() > 0);
+        pool.release(engine);
+        pool.shutdown();
+    }
+
+    @Test
+    public void latencyPercentiles() {
+        LatencyStats stats = new LatencyStats();
+        assertEquals(0, stats.percentile(0.5), 0);
+        for (int i = 1; i <= 100; i += 1) {
+            stats.record(i * 1000000L);
+        }
+        assertEquals(100, stats.count());
+        assertEquals(50.5, stats.mean(), 1e-9);
+        assertEquals(100.0, stats.max(), 1e-9);
+        double median = stats.percentile(0.5);
+        assertTrue(median >= 50 && median <= 100);
+        assertEquals(100.0, stats.percentile(0.99), 1e-9);
+        assertTrue(stats.percentile(0.01) <= 2);
+    }
+
+}
@@ -0,0 +1,67 @@
+package loa;
+
+/** Statistics of a series of durations, such as the times automated
+ *  players take to move: their number, mean and maximum, and approximate
+ *  percentiles from a histogram of power-of-two buckets of microseconds.
+ *  Recording costs a few arithmetic operations and no allocation, however
+ *  many durations are recorded.  A LatencyStats may be shared by any
+ *  number of threads.
+ *  @author Tara Calista
+ */
+class LatencyStats {
+
+    /** Record a duration of NANOS nanoseconds. */
+    synchronized void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        _buckets[64 - Long.numberOfLeadingZeros(micros)] += 1;
+        _count += 1;
+        _total += micros;
+        _max = Math.max(_max, micros);
+    }
+
+    /** Return the number of durations recorded. */
+    synchronized long count() {
+        return _count;
+    }
+
+    /** Return the mean duration in milliseconds, or 0 if there are none. */
+    synchronized double mean() {
+        return _count == 0 ? 0 : _total / 1000.0 / _count;
+    }
+
+    /** Return the greatest duration in milliseconds. */
+    synchronized double max() {
+        return _max / 1000.0;
+    }
+
+    /** Return an upper bound, in milliseconds and within a factor of two
+     *  (but never more than max()), on the duration that a fraction P of
+     *  the durations recorded do not exceed.  Returns 0 if there are
+     *  none. */
+    synchronized double percentile(double p) {
+        long rank = (long) Math.ceil(p * _count), seen = 0;
+        for (int b = 0; b < _buckets.length && _count > 0; b += 1) {
+            seen += _buckets[b];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(_max, (1L << b) - 1) / 1000.0;
+            }
+        }
+        return max();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d moves, mean %.1f ms, p50 %.1f ms, "
+                             + "p99 %.1f ms, max %.1f ms", _count, mean(),
+                             percentile(0.5), percentile(0.99), max());
+    }
+
+    /** _buckets[B] is the number of durations of D microseconds, where
+     *  D has B significant bits (so 2**(B-1) <= D < 2**B). */
+    private final long[] _buckets = new long[65];
+    /** Number of durations. */
+    private long _count;
+    /** Sum and maximum of the durations in microseconds. */
+    private long _total, _max;
+
+}
@@ -0,0 +1,158 @@
+package loa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** A parallel search in the "lazy SMP" style.  Besides a main Search run
+ *  on the caller's thread, EngineConfig.threads - 1 helper Searches (see
+ *  Search(EngineConfig, TranspositionTable, int)) search the same root
+ *  position on pool threads, with slightly different depths and move
+ *  orders.  All of them share one lock-free TranspositionTable, so the
+ *  helpers' results speed up the main search, which alone decides the
+ *  move.  With one thread, this is just the main Search.
+ *  @author Tara Calista
+ */
+class LazySmp implements SearchStrategy {
+
+    /** A parallel search governed by CONFIG, using TABLE. */
+    LazySmp(EngineConfig config, TranspositionTable table) {
+        _table = table;
+        _main = new Search(config, table);
+        int threads = Math.max(1, config.threads);
+        _helpers = new Search[threads - 1];
+        for (int i = 0; i < _helpers.length; i += 1) {
+            _helpers[i] = new Search(config, table, i + 1);
+        }
+        _pool = _helpers.length == 0 ? null
+            : Executors.newFixedThreadPool(_helpers.length, r -> {
+                    Thread t = new Thread(r, "loa-search-helper");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /** Return the code of the best move for the side to move in BOARD, as
+     *  chosen by the main search (see Search.bestMove), or Move.NONE if
+     *  there is none.  Returns only after all helpers have stopped. */
+    @Override
+    public int bestMove(Board board) {
+        return search(board, true);
+    }
+
+    @Override
+    public int ponder(Board board) {
+        return search(board, false);
+    }
+
+    /** As for bestMove(BOARD), but ignoring the time and node budgets
+     *  unless TIMED. */
+    private int search(Board board, boolean timed) {
+        _main.reset();
+        if (_pool == null) {
+            return _main.search(board, timed);
+        }
+        List<Future<?>> running = new ArrayList<>();
+        for (Search helper : _helpers) {
+            helper.reset();
+            running.add(_pool.submit(() -> helper.search(board)));
+        }
+        try {
+            return _main.search(board, timed);
+        } finally {
+            for (Search helper : _helpers) {
+                helper.stop();
+            }
+            for (Future<?> helper : running) {
+                try {
+                    helper.get();
+                } catch (InterruptedException | ExecutionException excp) {
+                    throw new IllegalStateException("search helper failed",
+                                                    excp);
+                }
+            }
+        }
+    }
+
+    /** Tells LISTENER of the main search's iterations, with the nodes of
+     *  all threads. */
+    @Override
+    public void setListener(Listener listener) {
+        _main.setListener(listener == null ? null
+                          : (depth, move, score, nodes, elapsed)
+                          -> listener.iterationDone(depth, move, score,
+                                                    nodes(), elapsed));
+    }
+
+    @Override
+    public void stop() {
+        _main.stop();
+    }
+
+    @Override
+    public int depth() {
+        return _main.depth();
+    }
+
+    @Override
+    public int score() {
+        return _main.score();
+    }
+
+    @Override
+    public long elapsed() {
+        return _main.elapsed();
+    }
+
+    /** Return the main search. */
+    Search main() {
+        return _main;
+    }
+
+    @Override
+    public TranspositionTable table() {
+        return _table;
+    }
+
+    @Override
+    public void report(int level) {
+        _table.report(level);
+        if (_main.evalCache() != null) {
+            _main.evalCache().report(level);
+        }
+    }
+
+    @Override
+    public int threads() {
+        return _helpers.length + 1;
+    }
+
+    @Override
+    public long nodes() {
+        long total = _main.nodes();
+        for (Search helper : _helpers) {
+            total += helper.nodes();
+        }
+        return total;
+    }
+
+    @Override
+    public void shutdown() {
+        if (_pool != null) {
+            _pool.shutdownNow();
+        }
+    }
+
+    /** The shared transposition table. */
+    private final TranspositionTable _table;
+    /** The search that chooses the move. */
+    private final Search _main;
+    /** The helper searches. */
+    private final Search[] _helpers;
+    /** Threads running the helpers, or null if there are none. */
+    private final ExecutorService _pool;
+
+}
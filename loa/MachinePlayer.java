@@ -1,6 +1,34 @@
 package loa;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /** An automated Player.
+ *
+ *  While its opening book (EngineConfig.book) has a move for the
+ *  position, a MachinePlayer plays it without searching.
+ *
+ *  Near the end of the game (see EngineConfig.solver), a MachinePlayer
+ *  first tries to prove a forced win with its Solver, and plays the
+ *  winning move if it finds one.  Otherwise it searches.
+ *
+ *  With EngineConfig.ponder set and a time budget, a MachinePlayer
+ *  ponders: as soon as it has chosen a move, it guesses the opponent's
+ *  reply (the reply its search expected, as recorded in its
+ *  transposition table) and, on a background thread, searches the
+ *  position that reply would lead to while the opponent thinks.  If the
+ *  opponent does make that reply (a ponder hit), the search carries on
+ *  for one more move's budget and its result is played.  Otherwise (a
+ *  miss), it is stopped, and the usual search starts, with whatever the
+ *  ponder search has left in the table.
+ *
+ *  With EngineConfig.engines set, a MachinePlayer has no search or
+ *  Solver of its own, and borrows them from the pool for each move.  It
+ *  then never ponders.
  *  @author Tara Calista. */
 class MachinePlayer extends Player {
 
@@ -9,176 +37,238 @@ class MachinePlayer extends Player {
         super(side, game);
         _side = side;
         _game = game;
+        _config = game.config();
+        _search = _config.engines == null
+            ? SearchStrategy.create(_config) : null;
     }
 
-    /** Size of the row and column. */
-    static final int M = 8;
-
     @Override
     Move makeMove() {
-        testBoard = getBoard();
-        for (Move m : testBoard) {
-            maxMove = m;
-            minMove = m;
-            break;
-        }
-        max = Integer.MAX_VALUE;
-        min = Integer.MIN_VALUE;
-        maxMove.setMoveScore(max);
-        minMove.setMoveScore(min);
-        return findBestMove(2, testBoard, _side, min);
+        if (_config.engines == null) {
+            return chooseMove();
+        }
+        EnginePool.Engine engine = _config.engines.acquire();
+        _search = engine.search;
+        _solver = engine.solver;
+        try {
+            return chooseMove();
+        } finally {
+            _search = null;
+            _solver = null;
+            _config.engines.release(engine);
+        }
     }
 
-    /** Finding the best move that the AI can make.
-      * @param depth
-      *    how many moves you want to look ahead
-      * @param start
-      *    the current board state
-      * @param player
-      *    the side that player is on
-      * @param cutoff
-      *    the last best value
-      * @return Move.
-      */
-    Move findBestMove(int depth, Board start, Piece player, double cutoff) {
-        int tempScore;
-        int maxScore = 0;
-        if (start.piecesContiguous(player)) {
-            return maxMove;
-        } else if (start.piecesContiguous(player.opposite())) {
-            return minMove;
-        } else if (depth == 0) {
-            return guessBestMove(player, start, cutoff);
-        }
-        Move bestSoFar;
-        bestSoFar = minMove;
-        for (Move m : start) {
-            start.makeMove(m);
-            tempScore = getScore(start, player);
-            Piece opposit = player.opposite();
-            Move response = findBestMove(depth - 1, start, opposit, -tempScore);
-            start.retract();
-            if (-tempScore > maxScore) {
-                maxScore = tempScore;
-                bestSoFar = m;
-                bestSoFar.setMoveScore(maxScore);
-                if (bestSoFar.getMoveScore() >= cutoff) {
-                    break;
-                }
+    /** Return my move for the current position, using _search and, if it
+     *  is not null, _solver. */
+    private Move chooseMove() {
+        Board board = getBoard();
+        int best = bookMove(board);
+        if (best == Move.NONE) {
+            best = solve(board);
+        }
+        if (best != Move.NONE) {
+            stopThinking();
+            return Move.decode(best);
+        }
+        if (_ponder != null) {
+            if (board.key() == _ponderKey) {
+                _ponderHits += 1;
+                best = finishPonder();
+            } else {
+                _ponderMisses += 1;
+                stopThinking();
             }
         }
-        return bestSoFar;
+        if (best == Move.NONE) {
+            best = _search.bestMove(board);
+        }
+        Reporter.debug(1, "%s: %s after %d plies, %d nodes, %d ms, "
+                       + "%d threads", _side.fullName(), Move.decode(best),
+                       _search.depth(), _search.nodes(), _search.elapsed(),
+                       _search.threads());
+        _search.report(1);
+        if (_config.ponder && _config.moveTime > 0 && best != Move.NONE
+            && _config.engines == null) {
+            startPonder(board, best);
+        }
+        return Move.decode(best);
     }
 
-    /** Guessing the best move for AI.
-      * @param player
-      *    the side that player is on
-      * @param start
-      *    the current state of the board
-      * @param cutoff
-      *    the last best value for cutoff
-      * @return Move.
-      */
-    Move guessBestMove(Piece player, Board start, double cutoff) {
-        int tempScore;
-        Move bestSoFar;
-        bestSoFar = minMove;
-        for (Move m : start) {
-            start.makeMove(m);
-            tempScore = getScore(start, player);
-            start.retract();
-            if (tempScore > bestSoFar.getMoveScore()) {
-                bestSoFar = m;
-                bestSoFar.setMoveScore(tempScore);
-                if (tempScore >= cutoff) {
-                    break;
-                }
-            }
+    /** Return a move from my opening book for the position on BOARD, or
+     *  Move.NONE if there is none.  The move is chosen at random in
+     *  proportion to the book's weights, unless EngineConfig.deterministic
+     *  is set, when it is the move of greatest weight. */
+    private int bookMove(Board board) {
+        if (_config.book == null) {
+            return Move.NONE;
         }
-        return bestSoFar;
+        int move =
+            _config.book.move(board, _config.deterministic ? null
+                              : _game::randInt);
+        if (move != Move.NONE) {
+            Reporter.debug(1, "%s: %s from book", _side.fullName(),
+                           Move.decode(move));
+        }
+        return move;
+    }
+
+    /** Return the winning move for the side to move on BOARD if my Solver
+     *  can prove one and the position calls for trying, or else
+     *  Move.NONE. */
+    private int solve(Board board) {
+        if (!Solver.worthTrying(board, _config)) {
+            return Move.NONE;
+        }
+        if (_solver == null && _config.engines != null) {
+            return Move.NONE;
+        } else if (_solver == null) {
+            _solver = new Solver(_config.solverKilobytes,
+                                 _config.solverDepth);
+        }
+        int result = _solver.solve(board, _config.solverNodes);
+        Reporter.debug(1, "%s: solver %s after %d nodes", _side.fullName(),
+                       result == Solver.PROVEN ? "proved a win"
+                       : result == Solver.DISPROVEN ? "found no win"
+                       : "ran out of nodes", _solver.nodes());
+        return result == Solver.PROVEN ? _solver.move() : Move.NONE;
     }
 
-    /** Return the score of the board.
-      * @param b
-      *    the current board b
-      * @param pi
-      *    the side that player is on
-      */
-    public int getScore(Board b, Piece pi) {
-        int score = 0;
-        int temp;
-        for (int k = 0; k < M; k++) {
-            for (int l = 0; l < M; l++) {
-                _visited[k][l] = false;
+    /** Stop pondering, if I am, and wait for the search to end. */
+    @Override
+    void stopThinking() {
+        if (_ponder == null) {
+            return;
+        }
+        while (true) {
+            _search.stop();
+            try {
+                _ponder.get(STOP_POLL, TimeUnit.MILLISECONDS);
+                break;
+            } catch (TimeoutException excp) {
+                continue;
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException("ponder search failed",
+                                                excp);
             }
         }
-        for (int i = 0; i < M; i++) {
-            for (int j = 0; j < M; j++) {
-                if (b.get(i + 1, j + 1) == pi && !_visited[i][j]) {
-                    contSum = 0;
-                    temp = dfs(i, j);
-                    score += temp * temp;
-                }
+        _ponder = null;
+    }
+
+    /** Stop thinking, and shut down my pondering thread, and my search's
+     *  threads if the search is my own rather than borrowed from
+     *  EngineConfig.engines. */
+    @Override
+    void release() {
+        stopThinking();
+        if (_pool != null) {
+            _pool.shutdown();
+            _pool = null;
+        }
+        if (_config.engines == null) {
+            _search.shutdown();
+        }
+    }
+
+    /** Return the reply I expect to MOVE from the position on BOARD: the
+     *  best move my transposition table records for the position after
+     *  it, if that is legal, or else Move.NONE. */
+    int expectedReply(Board board, int move) {
+        Board after = new Board(board);
+        after.makeMove(move);
+        if (after.gameOver()) {
+            return Move.NONE;
+        }
+        long entry = _search.table().probe(after.key());
+        int reply = TranspositionTable.move(entry);
+        if (entry == 0 || reply == Move.NONE) {
+            return Move.NONE;
+        }
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = after.generateMoves(moves);
+        for (int i = 0; i < n; i += 1) {
+            if (moves[i] == reply) {
+                return reply;
             }
         }
-        return score;
+        return Move.NONE;
     }
 
-    /** DFS.
-      * @param i
-      *    the starting column
-      * @param j
-      *    the starting row
-      * @return int
-      */
-    private int dfs(int i, int j) {
-        _visited[i][j] = true;
-        int[] intI = {i - 1, i + 1, i};
-        int[] intJ = {j - 1, j + 1, j};
-        for (int m = 0; m < 3; m++) {
-            for (int n = 0; n < 3; n++) {
-                if (m == 2 && n == 2) {
-                    continue;
-                }
-                if (isValid(intI[m], intJ[n]) && !_visited[intI[m]][intJ[n]]) {
-                    p = getBoard().get(m + 1, n + 1);
-                    if (p == _side) {
-                        contSum++;
-                        dfs(intI[m], intJ[n]);
-                    }
-                }
+    /** Start pondering on the position after MOVE and its expected
+     *  reply from the position on BOARD, if there is such a reply. */
+    private void startPonder(Board board, int move) {
+        int reply = expectedReply(board, move);
+        if (reply == Move.NONE) {
+            return;
+        }
+        Board position = new Board(board);
+        position.makeMove(move);
+        position.makeMove(reply);
+        if (position.gameOver()) {
+            return;
+        }
+        if (_pool == null) {
+            _pool = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "loa-ponder");
+                    t.setDaemon(true);
+                    return t;
+                });
+        }
+        _ponderKey = position.key();
+        _ponder = _pool.submit(() -> _search.ponder(position));
+    }
+
+    /** After a ponder hit, let the ponder search run for up to another
+     *  EngineConfig.moveTime milliseconds, and return its move. */
+    private int finishPonder() {
+        try {
+            try {
+                return _ponder.get(_config.moveTime, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException excp) {
+                Future<Integer> ponder = _ponder;
+                stopThinking();
+                return ponder.get();
             }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException("ponder search failed", excp);
+        } finally {
+            _ponder = null;
         }
-        return contSum;
     }
 
-    /** Returns true if an index is valid in getScore.
-      * @param i
-      *    the column index
-      * @param j
-      *    the row index
-      */
-    boolean isValid(int i, int j) {
-        if (i >= 0 && i <= 7 && j >= 0 && j <= 7) {
-            return true;
-        }
-        return false;
+    /** Return the number of times the opponent made the reply I was
+     *  pondering. */
+    int ponderHits() {
+        return _ponderHits;
+    }
+
+    /** Return the number of times the opponent made some other move while
+     *  I was pondering. */
+    int ponderMisses() {
+        return _ponderMisses;
     }
 
+    /** Milliseconds between requests to stop a ponder search that has
+     *  not yet ended. */
+    private static final long STOP_POLL = 10;
+
     /** The side the player is on. */
     private Piece _side;
     /** The current game being played. */
     private Game _game;
-    /** For DFS to check if a piece has been visited. */
-    private boolean[][] _visited = new boolean[M][M];
-    /** The total sum of a piece in a board. */
-    private int contSum;
-    /** The board being tested for AI. */
-    private Board testBoard;
-    /** The piece that the player is. */
-    private Piece p;
-    /** Max and min values. */
-    private int max, min;
-    /** The max and min moves that gives max and min values. */
-    private Move maxMove, minMove;
+    /** My settings. */
+    private final EngineConfig _config;
+    /** The search used to choose moves (while moving, if borrowed from
+     *  EngineConfig.engines). */
+    private SearchStrategy _search;
+    /** Endgame solver, created when first needed or borrowed. */
+    private Solver _solver;
+    /** Thread that ponders, created when first needed. */
+    private ExecutorService _pool;
+    /** The ponder search in progress, or null if none. */
+    private Future<Integer> _ponder;
+    /** Key of the position being pondered. */
+    private long _ponderKey;
+    /** Numbers of ponder hits and misses. */
+    private int _ponderHits, _ponderMisses;
 }
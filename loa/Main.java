@@ -4,6 +4,8 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
 
 import ucb.util.CommandArgs;
 
@@ -23,14 +25,86 @@ public class Main {
      *                      meesages up to level LEVEL.  0 indicates no
      *                      debugging messages (the default).  (This option
      *                      is not part of the spec.)
+     *      --time=MS       Give automated players MS milliseconds per move
+     *                      (0 for no limit).
+     *      --nodes=N       Give automated players N search nodes per move
+     *                      (0 for no limit).
+     *      --depth=N       Search no more than N plies ahead.
+     *      --hash=MB       Give each automated player a transposition table
+     *                      of MB megabytes.
+     *      --evalcache=KB  Give each searching thread an evaluation cache
+     *                      of KB kilobytes (0 for none).
+     *      --threads=N     Have each automated player search with N
+     *                      threads.
+     *      --forkjoin      Split each automated player's search tree among
+     *                      its threads (see ForkJoinSearch) rather than
+     *                      have them share a table (see LazySmp).
+     *      --ponder        Have automated players think on their
+     *                      opponents' time.
+     *      --book=FILE     Have automated players play from the opening
+     *                      book in FILE (see OpeningBook and BookBuilder)
+     *                      while it has moves.
+     *      --solver=N      Let automated players spend up to N nodes per
+     *                      move near the end of the game trying to prove
+     *                      a forced win (see Solver; 0 for none).
+     *      --deterministic Make the automated players' moves depend only on
+     *                      the position and --depth, whatever the timing or
+     *                      the number of threads with --forkjoin (see
+     *                      EngineConfig.deterministic).
+     *      --record=FILE   Append each game played from the initial
+     *                      position to the game record file FILE (see
+     *                      GameRecords).
+     *      --perft=DEPTH   Instead of playing, print the perft count (see
+     *                      Perft) to DEPTH of the initial position, with
+     *                      its speed in nodes per second.
+     *      --position=POS  With --perft, start from the one-line position
+     *                      POS (see Board.POSITION) instead.
+     *      --divide        With --perft, also print the count after each
+     *                      legal first move.
+     *      --protocol      Instead of playing, be driven by another program
+     *                      through the text protocol described in Protocol,
+     *                      on the standard input and output.
+     *      --server=PORT   Instead of playing, play games with any number
+     *                      of clients connecting to PORT on the loopback
+     *                      interface (see GameServer).
+     *      --engines=N     With --server, let at most N automated players
+     *                      think at once (by default, one per processor).
+     *                      While serving, the command report on the
+     *                      standard input prints each session's move
+     *                      times and the engine pool's use, and quit
+     *                      stops the server.
      */
     public static void main(String... args) {
         CommandArgs options =
-            new CommandArgs("--debug=(\\d+){0,1} --display{0,1}", args);
+            new CommandArgs("--debug=(\\d+){0,1} --display{0,1} "
+                            + "--perft=(\\d+){0,1} --position=(.+){0,1} "
+                            + "--divide{0,1} --protocol{0,1} "
+                            + "--record=(.+){0,1} "
+                            + "--server=(\\d+){0,1} --engines=(\\d+){0,1} "
+                            + ENGINE_OPTIONS, args);
 
         if (!options.ok()) {
             usage();
         }
+
+        if (options.contains("--debug")) {
+            Reporter.setMessageLevel(options.getInt("--debug"));
+        }
+
+        if (options.contains("--perft")) {
+            perft(options);
+            return;
+        }
+        if (options.contains("--protocol")) {
+            new Protocol(engineConfig(options),
+                         new BufferedReader(new InputStreamReader(System.in)),
+                         System.out).run();
+            return;
+        }
+        if (options.contains("--server")) {
+            serve(options);
+            return;
+        }
         System.out.printf("Lines of Action.  Version %s.%nType ? for help.%n",
                           VERSION);
 
@@ -38,35 +112,158 @@ public class Main {
             error(1, "--display not supported.");
         }
 
-        if (options.contains("--debug")) {
-            Reporter.setMessageLevel(options.getInt("--debug"));
+        Game game = new Game(engineConfig(options));
+        GameRecorder recorder = null;
+        if (options.contains("--record")) {
+            String file = options.getLast("--record");
+            try {
+                recorder = new GameRecorder(Path.of(file));
+            } catch (IOException excp) {
+                error(1, "cannot record games in %s: %s%n", file,
+                      excp.getMessage());
+            }
+            game.setRecorder(recorder);
         }
-
-        Game game = new Game();
         game.play();
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException excp) {
+                error(1, "cannot record games: %s%n", excp.getMessage());
+            }
+        }
+        System.exit(0);
     }
 
+    /** The options read by engineConfig, in the form CommandArgs takes. */
+    static final String ENGINE_OPTIONS =
+        "--time=(\\d+){0,1} --nodes=(\\d+){0,1} --depth=(\\d+){0,1} "
+        + "--hash=(\\d+){0,1} --threads=(\\d+){0,1} --forkjoin{0,1} "
+        + "--deterministic{0,1} --evalcache=(\\d+){0,1} --ponder{0,1} "
+        + "--solver=(\\d+){0,1} --book=(.+){0,1}";
+
     /** Print brief description of the command-line format. */
     static void usage() {
-        System.out.println("Usage: java loa.Main");
+        System.out.println("Usage: java loa.Main [--debug=LEVEL] [--time=MS] "
+                           + "[--nodes=N] [--depth=N] [--hash=MB] "
+                           + "[--evalcache=KB] [--threads=N] [--forkjoin] "
+                           + "[--deterministic] [--ponder] [--solver=N] "
+                           + "[--book=FILE] [--record=FILE]");
+        System.out.println("       java loa.Main --perft=DEPTH "
+                           + "[--position=POS] [--divide]");
+        System.out.println("       java loa.Main --protocol [--debug=LEVEL] "
+                           + "[engine options as above]");
+        System.out.println("       java loa.Main --server=PORT [--engines=N] "
+                           + "[engine options as above]");
         System.exit(1);
     }
 
+    /** Return the EngineConfig described by OPTIONS. */
+    static EngineConfig engineConfig(CommandArgs options) {
+        EngineConfig config = new EngineConfig();
+        if (options.contains("--time")) {
+            config.moveTime = options.getLong("--time");
+        }
+        if (options.contains("--nodes")) {
+            config.moveNodes = options.getLong("--nodes");
+        }
+        if (options.contains("--depth")) {
+            config.maxDepth = Math.max(1, options.getInt("--depth"));
+        }
+        if (options.contains("--hash")) {
+            config.hashMegabytes = options.getInt("--hash");
+        }
+        if (options.contains("--evalcache")) {
+            config.evalCacheKilobytes = options.getInt("--evalcache");
+        }
+        if (options.contains("--threads")) {
+            config.threads = Math.max(1, options.getInt("--threads"));
+        }
+        config.forkJoin = options.contains("--forkjoin");
+        config.deterministic = options.contains("--deterministic");
+        config.ponder = options.contains("--ponder");
+        if (options.contains("--solver")) {
+            config.solverNodes = options.getLong("--solver");
+            config.solver = config.solverNodes > 0;
+        }
+        if (options.contains("--book")) {
+            String file = options.getLast("--book");
+            try {
+                config.book = new OpeningBook(Path.of(file));
+            } catch (IOException excp) {
+                error(1, "cannot read opening book %s: %s", file,
+                      excp.getMessage());
+            }
+        }
+        return config;
+    }
+
+    /** Start the GameServer requested by OPTIONS, and take commands for
+     *  it from the standard input (see GameServer.console) until quit.
+     *  If the input ends first, the server's thread keeps the program
+     *  running. */
+    static void serve(CommandArgs options) {
+        int engines = options.contains("--engines")
+            ? options.getInt("--engines")
+            : Runtime.getRuntime().availableProcessors();
+        GameServer server =
+            new GameServer(engineConfig(options), engines, System.out);
+        try {
+            server.start(options.getInt("--server"));
+        } catch (IOException excp) {
+            error(1, "cannot listen on port %s: %s%n",
+                  options.getLast("--server"), excp.getMessage());
+        }
+        System.out.printf("Lines of Action server.  Version %s.  "
+                          + "Listening on port %d with %d engines.%n"
+                          + "Type report or quit.%n",
+                          VERSION, server.port(), server.engines().size());
+        try {
+            if (server.console(new BufferedReader(
+                                   new InputStreamReader(System.in)),
+                               System.out)) {
+                System.exit(0);
+            }
+        } catch (IOException excp) {
+            error(1, "unexpected I/O error on input: %s%n",
+                  excp.getMessage());
+        }
+    }
+
+    /** Run the perft count requested by OPTIONS. */
+    static void perft(CommandArgs options) {
+        Board board;
+        try {
+            board = options.contains("--position")
+                ? new Board(options.getLast("--position")) : new Board();
+        } catch (IllegalArgumentException excp) {
+            error(1, "%s%n", excp.getMessage());
+            return;
+        }
+        new Perft(board).report(options.getInt("--perft"),
+                                options.contains("--divide"), System.out);
+    }
+
     /** Print the contents of the resource named NAME on the standard error.
      *  The resource can be any file in the class directory.  File
      *  loa/foo.txt, for example, is named simply "loa/foo.txt". */
     static void printResource(String name) {
+        printResource(name, System.err);
+    }
+
+    /** Print the contents of the resource named NAME on OUT. */
+    static void printResource(String name, PrintStream out) {
         try {
             InputStream resourceStream =
                 Main.class.getClassLoader().getResourceAsStream(name);
             BufferedReader str =
                 new BufferedReader(new InputStreamReader(resourceStream));
             for (String s = str.readLine(); s != null; s = str.readLine())  {
-                System.err.println(s);
+                out.println(s);
             }
             str.close();
         } catch (IOException excp) {
-            System.out.println("No help found.");
+            out.println("No help found.");
         }
     }
 
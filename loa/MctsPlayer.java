@@ -0,0 +1,92 @@
+package loa;
+
+/** An automated Player that chooses its moves by Monte Carlo tree
+ *  search (see MctsTree), keeping the part of its tree that the moves
+ *  actually played lead to from one move to the next.  The command
+ *  "auto P mcts" selects it.  Like a MachinePlayer, while its opening
+ *  book (EngineConfig.book) has a move for the position, it plays that
+ *  move without searching.  Its tree is created when first needed and
+ *  dropped when the player stops thinking.  With EngineConfig.engines
+ *  set, it instead uses the tree of an engine borrowed from the pool
+ *  for each move, so that the pool bounds the memory and threads spent
+ *  on Monte Carlo search as it does for MachinePlayers.  The part of
+ *  the tree kept from the last move is then used only if the same
+ *  engine comes back.
+ *  @author Tara Calista
+ */
+class MctsPlayer extends Player {
+
+    /** A MctsPlayer that plays the SIDE pieces in GAME. */
+    MctsPlayer(Piece side, Game game) {
+        super(side, game);
+        _side = side;
+        _game = game;
+    }
+
+    @Override
+    Move makeMove() {
+        int move = bookMove(getBoard());
+        if (move != Move.NONE) {
+            return Move.decode(move);
+        }
+        EnginePool engines = _game.config().engines;
+        if (engines == null) {
+            if (_tree == null) {
+                _tree = new MctsTree(_game.config());
+            }
+            return Move.decode(search(_tree));
+        }
+        EnginePool.Engine engine = engines.acquire();
+        try {
+            return Move.decode(search(engine.tree()));
+        } finally {
+            engines.release(engine);
+        }
+    }
+
+    /** Return the code of the move TREE chooses for the current
+     *  position. */
+    private int search(MctsTree tree) {
+        int best = tree.bestMove(getBoard(), _game.randInt(Integer.MAX_VALUE));
+        Reporter.debug(1, "%s: %s after %d playouts, %d nodes%s, %d ms, "
+                       + "%d threads", _side.fullName(), Move.decode(best),
+                       tree.playouts(), tree.size(),
+                       tree.reused() ? " (tree reused)" : "",
+                       tree.elapsed(), tree.workers());
+        return best;
+    }
+
+    /** Return a move from my opening book for the position on BOARD, or
+     *  Move.NONE if there is none, chosen as a MachinePlayer chooses
+     *  one. */
+    private int bookMove(Board board) {
+        EngineConfig config = _game.config();
+        if (config.book == null) {
+            return Move.NONE;
+        }
+        int move = config.book.move(board, config.deterministic ? null
+                                    : _game::randInt);
+        if (move != Move.NONE) {
+            Reporter.debug(1, "%s: %s from book", _side.fullName(),
+                           Move.decode(move));
+        }
+        return move;
+    }
+
+    /** Release my tree, if I have one of my own, and its worker
+     *  threads. */
+    @Override
+    void stopThinking() {
+        if (_tree != null) {
+            _tree.shutdown();
+            _tree = null;
+        }
+    }
+
+    /** The side the player is on. */
+    private Piece _side;
+    /** The current game being played. */
+    private Game _game;
+    /** My own search tree, or null if I have none now. */
+    private MctsTree _tree;
+}
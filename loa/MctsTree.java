@@ -0,0 +1,479 @@
+package loa;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A Monte Carlo search tree, used by MctsPlayer to choose moves.
+ *
+ *  Each playout descends the tree from the root by UCT (the child
+ *  maximizing its mean result plus EngineConfig.mctsExploration times
+ *  sqrt(ln N / n), N and n being the visits of parent and child),
+ *  expands the node it reaches if that has been visited before, plays
+ *  on for up to EngineConfig.mctsPlayoutPlies plies, and credits the
+ *  result to every node on its path.  Each playout move is the better,
+ *  by the mover's number of groups afterwards, of two random legal
+ *  moves.  A playout that ends before the game does is scored by the
+ *  sign of the static evaluation (see Evaluator).
+ *
+ *  The tree is shared by EngineConfig.threads workers (one if
+ *  EngineConfig.deterministic is set).  A worker adds a virtual loss to
+ *  each node as it descends through it, and removes it when it credits
+ *  the result, so that the other workers spread out over the tree
+ *  rather than follow it.  Counters are updated atomically through
+ *  VarHandles; a node is expanded by the one worker that changes its
+ *  first-child index from UNEXPANDED to EXPANDING, the others playing
+ *  out from it meanwhile.
+ *
+ *  Nodes live in parallel int arrays of EngineConfig.mctsNodes entries
+ *  rather than in objects, with the children of a node in consecutive
+ *  entries, allocated together when it is expanded.  Once the arrays
+ *  are full, nodes that would be expanded are marked FULL and stay
+ *  leaves until the next move.  The subtree for the move
+ *  actually played and the opponent's reply is kept for the next move:
+ *  it is copied, breadth first, into a second set of arrays, which then
+ *  change places with the first.  FULL nodes are copied as UNEXPANDED,
+ *  since there may then be room for their children.
+ *  @author Tara Calista
+ */
+class MctsTree {
+
+    /** Values of _first for a node whose children have not been
+     *  created, one whose children are being created, one that has none
+     *  because its position is at the end of the game, and one whose
+     *  children did not fit in the arrays. */
+    static final int UNEXPANDED = -1, EXPANDING = -2, LEAF = -3, FULL = -4;
+
+    /** Number of playouts per move when there are neither time nor node
+     *  budgets. */
+    static final int DEFAULT_PLAYOUTS = 10000;
+
+    /** Points for a win, a draw and a loss. */
+    private static final int WIN = 2, DRAW = 1, LOSS = 0;
+
+    /** Greatest depth, from the root, to which a playout descends in the
+     *  tree. */
+    private static final int MAX_DEPTH = 1024;
+
+    /** Access to the elements of an int[] with atomic operations. */
+    private static final VarHandle INTS =
+        MethodHandles.arrayElementVarHandle(int[].class);
+
+    /** A tree for players with the settings in CONFIG. */
+    MctsTree(EngineConfig config) {
+        _config = config;
+        int capacity = Math.max(2, config.mctsNodes);
+        _move = new int[capacity];
+        _first = new int[capacity];
+        _count = new int[capacity];
+        _visits = new int[capacity];
+        _virtual = new int[capacity];
+        _score = new int[capacity];
+        _spareMove = new int[capacity];
+        _spareFirst = new int[capacity];
+        _spareCount = new int[capacity];
+        _spareVisits = new int[capacity];
+        _spareVirtual = new int[capacity];
+        _spareScore = new int[capacity];
+        _workers = _config.deterministic ? 1 : Math.max(1, config.threads);
+    }
+
+    /** Return the code of the move for the side to move on BOARD with the
+     *  most visits after running playouts within my budget (see
+     *  EngineConfig.moveTime and EngineConfig.moveNodes, which counts
+     *  playouts), or Move.NONE if there are no legal moves.  SEED
+     *  seeds the workers' random choices. */
+    int bestMove(Board board, long seed) {
+        _startTime = System.currentTimeMillis();
+        _reused = reuse(board);
+        if (!_reused) {
+            clear();
+        }
+        _rootBoard.copyFrom(board);
+        _playouts.set(0);
+        long limit = _config.moveNodes;
+        if (limit <= 0 && _config.moveTime <= 0) {
+            limit = DEFAULT_PLAYOUTS;
+        }
+        _limit = limit;
+        _deadline = _config.moveTime > 0 ? _startTime + _config.moveTime : 0;
+        _stop = false;
+        if (!board.gameOver()) {
+            expand(_root, new Board(board), new int[Board.MAX_MOVES]);
+        }
+        if (_first[_root] >= 0) {
+            runWorkers(seed);
+        }
+        _played = Move.NONE;
+        int most = -1;
+        for (int k = 0, f = _first[_root]; f >= 0 && k < _count[_root];
+             k += 1) {
+            if (_visits[f + k] > most) {
+                most = _visits[f + k];
+                _played = _move[f + k];
+            }
+        }
+        _elapsed = System.currentTimeMillis() - _startTime;
+        return _played;
+    }
+
+    /** Return the number of playouts in the last call to bestMove. */
+    long playouts() {
+        return _playouts.get();
+    }
+
+    /** Return the number of nodes in the tree. */
+    int size() {
+        return Math.min(_top.get(), _move.length);
+    }
+
+    /** Return the number of visits to the root. */
+    int rootVisits() {
+        return _visits[_root];
+    }
+
+    /** Return true iff the last call to bestMove started from the
+     *  subtree kept from the one before. */
+    boolean reused() {
+        return _reused;
+    }
+
+    /** Return the milliseconds taken by the last call to bestMove. */
+    long elapsed() {
+        return _elapsed;
+    }
+
+    /** Return the number of workers. */
+    int workers() {
+        return _workers;
+    }
+
+    /** Empty the tree, leaving only a root. */
+    void clear() {
+        _root = 0;
+        _move[0] = Move.NONE;
+        _first[0] = UNEXPANDED;
+        _count[0] = 0;
+        _visits[0] = _virtual[0] = _score[0] = 0;
+        _top.set(1);
+        _played = Move.NONE;
+    }
+
+    /** Release my worker threads, if any.  The next call to bestMove
+     *  creates them again if it needs them. */
+    void shutdown() {
+        if (_pool != null) {
+            _pool.shutdownNow();
+            _pool = null;
+        }
+    }
+
+    /** Run playouts on _workers threads, the first seeded with SEED,
+     *  until the budget runs out. */
+    private void runWorkers(long seed) {
+        if (_workers == 1) {
+            work(seed);
+            return;
+        }
+        if (_pool == null) {
+            _pool = Executors.newFixedThreadPool(_workers, r -> {
+                    Thread t = new Thread(r, "loa-mcts");
+                    t.setDaemon(true);
+                    return t;
+                });
+        }
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int w = 0; w < _workers; w += 1) {
+            long workerSeed = seed + w;
+            tasks.add(_pool.submit(() -> work(workerSeed)));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException("playout failed", excp);
+        }
+    }
+
+    /** Run playouts with random choices seeded by SEED until the budget
+     *  runs out. */
+    private void work(long seed) {
+        Random random = new Random(seed);
+        Board board = new Board(_rootBoard);
+        int[] path = new int[MAX_DEPTH];
+        int[] moves = new int[Board.MAX_MOVES];
+        while (!_stop) {
+            playout(board, path, moves, random);
+            long n = _playouts.incrementAndGet();
+            if (_limit > 0 && n >= _limit
+                || _deadline > 0 && (n & 0xf) == 0
+                   && System.currentTimeMillis() >= _deadline) {
+                _stop = true;
+            }
+        }
+    }
+
+    /** Run one playout from the root on BOARD, which is at the root
+     *  position and is returned to it, using PATH and MOVES as scratch
+     *  space and RANDOM for random choices. */
+    private void playout(Board board, int[] path, int[] moves,
+                         Random random) {
+        int node = _root, depth = 0;
+        path[depth++] = node;
+        INTS.getAndAdd(_virtual, node, 1);
+        Piece winner = null;
+        while (depth < MAX_DEPTH) {
+            int first = (int) INTS.getVolatile(_first, node);
+            if (first == UNEXPANDED && _visits[node] > 0) {
+                first = expand(node, board, moves);
+            }
+            if (first < 0) {
+                break;
+            }
+            node = select(node, first);
+            board.makeMove(_move[node]);
+            path[depth++] = node;
+            INTS.getAndAdd(_virtual, node, 1);
+            winner = board.winner();
+            if (winner != null) {
+                break;
+            }
+        }
+        int plies = 0;
+        while (winner == null && plies < _config.mctsPlayoutPlies) {
+            int n = board.generateMoves(moves);
+            if (n == 0) {
+                break;
+            }
+            Piece mover = board.turn();
+            int move = moves[random.nextInt(n)];
+            if (n > 1) {
+                int other = moves[random.nextInt(n)];
+                board.makeMove(move);
+                int groups = board.eulerNumber(mover);
+                board.retract();
+                board.makeMove(other);
+                if (board.eulerNumber(mover) < groups) {
+                    move = other;
+                }
+                board.retract();
+            }
+            board.makeMove(move);
+            plies += 1;
+            winner = board.winner();
+        }
+        int black;
+        if (winner != null) {
+            black = winner == Piece.BP ? WIN : LOSS;
+        } else {
+            int value = _evaluator.evaluate(board);
+            int mover = value > 0 ? WIN : value < 0 ? LOSS : DRAW;
+            black = board.turn() == Piece.BP ? mover : WIN - mover;
+        }
+        for (; plies > 0; plies -= 1) {
+            board.retract();
+        }
+        Piece side = _rootBoard.turn().opposite();
+        for (int d = 0; d < depth; d += 1) {
+            int n = path[d];
+            INTS.getAndAdd(_score, n, side == Piece.BP ? black : WIN - black);
+            INTS.getAndAdd(_visits, n, 1);
+            INTS.getAndAdd(_virtual, n, -1);
+            side = side.opposite();
+            if (d > 0) {
+                board.retract();
+            }
+        }
+    }
+
+    /** Return the child, among the _count[NODE] starting at FIRST, with
+     *  the greatest UCT value, counting virtual losses as visits with no
+     *  points.  Unvisited children come first. */
+    private int select(int node, int first) {
+        int parent = _visits[node] + _virtual[node];
+        double log = Math.log(Math.max(1, parent));
+        double c = _config.mctsExploration;
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int k = 0, n = _count[node]; k < n; k += 1) {
+            int child = first + k;
+            int visits = _visits[child] + _virtual[child];
+            if (visits == 0) {
+                return child;
+            }
+            double value = _score[child] / (2.0 * visits)
+                + c * Math.sqrt(log / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /** Create the children of NODE, whose position is on BOARD, unless
+     *  another worker is doing so, and return its first-child index.
+     *  MOVES is scratch space for Board.MAX_MOVES moves. */
+    private int expand(int node, Board board, int[] moves) {
+        if (!INTS.compareAndSet(_first, node, UNEXPANDED, EXPANDING)) {
+            return (int) INTS.getVolatile(_first, node);
+        }
+        int n = board.gameOver() ? 0 : board.generateMoves(moves);
+        int first = n == 0 ? LEAF : _top.getAndAdd(n);
+        if (first >= 0 && first + n > _move.length) {
+            first = FULL;
+        }
+        for (int k = 0; k < n && first >= 0; k += 1) {
+            int child = first + k;
+            _move[child] = moves[k];
+            _first[child] = UNEXPANDED;
+            _count[child] = 0;
+            _visits[child] = _virtual[child] = _score[child] = 0;
+        }
+        _count[node] = first < 0 ? 0 : n;
+        INTS.setVolatile(_first, node, first);
+        return first;
+    }
+
+    /** If the tree holds the position on BOARD two plies below the root,
+     *  after the move last chosen, make that position the root, keeping
+     *  its subtree and discarding the rest, and return true.  Otherwise
+     *  return false.  A node marked LEAF is kept only if its position is
+     *  in fact at the end of the game. */
+    private boolean reuse(Board board) {
+        if (_played == Move.NONE || _first[_root] < 0) {
+            return false;
+        }
+        int chosen = -1;
+        for (int k = 0; k < _count[_root]; k += 1) {
+            if (_move[_first[_root] + k] == _played) {
+                chosen = _first[_root] + k;
+            }
+        }
+        if (chosen < 0 || _first[chosen] < 0) {
+            return false;
+        }
+        Board after = new Board(_rootBoard);
+        after.makeMove(_played);
+        for (int k = 0; k < _count[chosen]; k += 1) {
+            int reply = _first[chosen] + k;
+            after.makeMove(_move[reply]);
+            boolean found = after.equals(board);
+            after.retract();
+            if (found) {
+                if (_first[reply] == LEAF && !board.gameOver()) {
+                    return false;
+                }
+                compact(reply);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Copy the subtree under NODE into the spare arrays, breadth first
+     *  and with NODE at index 0, and exchange them with the current
+     *  ones.  Nodes without children, other than LEAF nodes, are copied
+     *  as UNEXPANDED. */
+    private void compact(int node) {
+        int top = 1;
+        _spareFirst[0] = node;
+        for (int i = 0; i < top; i += 1) {
+            int old = _spareFirst[i];
+            _spareMove[i] = _move[old];
+            _spareVisits[i] = _visits[old];
+            _spareScore[i] = _score[old];
+            _spareVirtual[i] = 0;
+            int first = _first[old], n = _count[old];
+            if (first < 0) {
+                _spareFirst[i] = first == LEAF ? LEAF : UNEXPANDED;
+                _spareCount[i] = 0;
+                continue;
+            }
+            _spareFirst[i] = top;
+            _spareCount[i] = n;
+            for (int k = 0; k < n; k += 1) {
+                _spareFirst[top + k] = first + k;
+            }
+            top += n;
+        }
+        int[] t = _move;
+        _move = _spareMove;
+        _spareMove = t;
+        t = _first;
+        _first = _spareFirst;
+        _spareFirst = t;
+        t = _count;
+        _count = _spareCount;
+        _spareCount = t;
+        t = _visits;
+        _visits = _spareVisits;
+        _spareVisits = t;
+        t = _virtual;
+        _virtual = _spareVirtual;
+        _spareVirtual = t;
+        t = _score;
+        _score = _spareScore;
+        _spareScore = t;
+        _root = 0;
+        _top.set(top);
+    }
+
+    /** My settings. */
+    private final EngineConfig _config;
+    /** Number of threads running playouts. */
+    private final int _workers;
+    /** Evaluates positions at the ends of playouts. */
+    private final Evaluator _evaluator = new Evaluator();
+
+    /** For each node, the code of the move leading to it. */
+    private int[] _move;
+    /** For each node, the index of its first child, or UNEXPANDED,
+     *  EXPANDING, LEAF or FULL. */
+    private int[] _first;
+    /** For each node, its number of children. */
+    private int[] _count;
+    /** For each node, the number of playouts through it. */
+    private int[] _visits;
+    /** For each node, the number of playouts now passing through it. */
+    private int[] _virtual;
+    /** For each node, the points (WIN, DRAW or LOSS per playout) won
+     *  through it by the side that made its move. */
+    private int[] _score;
+    /** Arrays into which compact copies the nodes kept. */
+    private int[] _spareMove, _spareFirst, _spareCount, _spareVisits,
+        _spareVirtual, _spareScore;
+    /** Index of the next unallocated node. */
+    private final AtomicInteger _top = new AtomicInteger(1);
+    /** Index of the root. */
+    private int _root;
+
+    /** The position at the root. */
+    private final Board _rootBoard = new Board();
+    /** The move last chosen from the root, or Move.NONE. */
+    private int _played = Move.NONE;
+    /** True if the current root was kept from the previous move. */
+    private boolean _reused;
+    /** Number of playouts run in the current call to bestMove. */
+    private final AtomicLong _playouts = new AtomicLong();
+    /** Limit on playouts (0 for none) and deadline in milliseconds (0
+     *  for none) of the current call to bestMove. */
+    private volatile long _limit, _deadline;
+    /** True once the current call to bestMove has used its budget. */
+    private volatile boolean _stop;
+    /** Times at which the current call to bestMove started, and that the
+     *  last one took, in milliseconds. */
+    private long _startTime, _elapsed;
+    /** Threads running playouts, created when first needed. */
+    private ExecutorService _pool;
+
+}
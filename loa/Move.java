@@ -70,24 +70,65 @@ class Move {
         _row1 = row1;
         _moved = moved;
         _replaced = replaced;
+        _code = encode(sq(col0, row0), sq(col1, row1), moved, replaced);
     }
 
-    /** The score of a move. */
-    private int score;
+    /* Moves also have a packed 15-bit integer encoding, convenient for
+     * move lists, tables and records:
+     *     bits 0-5    index of the starting square (see Board.sq)
+     *     bits 6-11   index of the ending square
+     *     bit 12      ordinal of the moved piece (BP or WP)
+     *     bits 13-14  ordinal of the replaced piece (BP, WP or EMP)
+     * No move starts and ends on the same square, so 0 (NONE) denotes
+     * no move. */
 
-    /** Get the score of a move.
-      * @return int.
-      */
-    int getMoveScore() {
-        return score;
+    /** The code denoting no move. */
+    static final int NONE = 0;
+
+    /** Number of distinct codes; all codes are in [0 .. CODES). */
+    static final int CODES = 1 << 15;
+
+    /** Return the code of the move from square index FROM to square index
+     *  TO, moving MOVED and replacing REPLACED. */
+    static int encode(int from, int to, Piece moved, Piece replaced) {
+        return from | to << 6 | moved.ordinal() << 12
+            | replaced.ordinal() << 13;
+    }
+
+    /** Return the Move denoted by CODE, or null if CODE denotes no valid
+     *  move. */
+    static Move decode(int code) {
+        return _byCode[code];
+    }
+
+    /** Return the starting square index of the move denoted by CODE. */
+    static int from(int code) {
+        return code & 0x3f;
+    }
+
+    /** Return the ending square index of the move denoted by CODE. */
+    static int to(int code) {
+        return (code >>> 6) & 0x3f;
+    }
+
+    /** Return the piece moved by the move denoted by CODE. */
+    static Piece moved(int code) {
+        return Piece.values()[(code >>> 12) & 1];
+    }
+
+    /** Return the piece replaced by the move denoted by CODE. */
+    static Piece replaced(int code) {
+        return Piece.values()[code >>> 13];
+    }
+
+    /** Return true iff the move denoted by CODE captures a piece. */
+    static boolean isCapture(int code) {
+        return (code >>> 13) != EMP.ordinal();
     }
 
-    /** Set the score of a move.
-      * @param m
-      *     the score of m
-      */
-    void setMoveScore(int m) {
-        score = m;
+    /** Return my packed code. */
+    int code() {
+        return _code;
     }
 
     /** Return the column at which this move starts, as an index in 1--8. */
@@ -144,12 +185,17 @@ class Move {
     private final Piece _moved;
     /** Piece replaced. */
     private final Piece _replaced;
+    /** My packed code. */
+    private final int _code;
 
     /** The set of all possible Moves, indexed by row and column of
      *  start, row and column of destination, piece moved and piece replaced. */
     private static Move[][][][][][] _moves =
         new Move[M + 1][M + 1][M + 1][M + 1][2][3];
 
+    /** All possible Moves, indexed by code. */
+    private static Move[] _byCode = new Move[CODES];
+
     static {
         for (int m = 0; m <= 1; m += 1) {
             for (int r = 0; r <= 2; r += 1) {
@@ -183,6 +229,21 @@ class Move {
                 }
             }
         }
+        for (Move[][][][][] a : _moves) {
+            for (Move[][][][] b : a) {
+                for (Move[][][] c : b) {
+                    for (Move[][] d : c) {
+                        for (Move[] e : d) {
+                            for (Move move : e) {
+                                if (move != null) {
+                                    _byCode[move._code] = move;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
     }
 
 }
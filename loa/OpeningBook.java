@@ -0,0 +1,168 @@
+package loa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntUnaryOperator;
+
+/** A read-only opening book: for each of a set of positions, the moves
+ *  played from it, each with a weight and the numbers of games won,
+ *  drawn and lost after it by the side that made it.
+ *
+ *  A book file is a header of HEADER bytes (the int MAGIC, the int
+ *  VERSION and the long number of records), followed by records of
+ *  RECORD bytes, sorted by position key and then move:
+ *      bytes 0-7    the position's key (Board.key())
+ *      bytes 8-9    the code of the move
+ *      bytes 10-11  the move's weight (unsigned; 0 for moves never to
+ *                   be chosen)
+ *      bytes 12-23  the ints wins, draws and losses
+ *  all big-endian.  The file is mapped into memory, not read onto the
+ *  heap, and a position's moves are found by binary search on the
+ *  mapped records, so opening a large book is cheap and a lookup costs
+ *  a few page reads at most.  An OpeningBook may be shared by any
+ *  number of threads.  BookBuilder writes books.
+ *  @author Tara Calista
+ */
+class OpeningBook {
+
+    /** First int of every book file ("LOAB"). */
+    static final int MAGIC = 0x4c4f4142;
+
+    /** Version of the file format. */
+    static final int VERSION = 1;
+
+    /** Sizes in bytes of the header and of a record. */
+    static final int HEADER = 16, RECORD = 24;
+
+    /** The book in the file FILE. */
+    OpeningBook(Path file) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER || length > Integer.MAX_VALUE) {
+                throw new IOException("not an opening book: " + file);
+            }
+            _data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        long size = _data.getLong(8);
+        if (_data.getInt(0) != MAGIC || _data.getInt(4) != VERSION
+            || size != (_data.capacity() - HEADER) / RECORD
+            || (_data.capacity() - HEADER) % RECORD != 0) {
+            throw new IOException("not an opening book: " + file);
+        }
+        _size = (int) size;
+    }
+
+    /** Return the number of records. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the index of the first record for the position with key
+     *  KEY, or of the first record for a later key if there is none. */
+    int first(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the position key of record I. */
+    long key(int i) {
+        return _data.getLong(offset(i));
+    }
+
+    /** Return the move code of record I. */
+    int move(int i) {
+        return _data.getShort(offset(i) + 8) & (Move.CODES - 1);
+    }
+
+    /** Return the weight of record I. */
+    int weight(int i) {
+        return _data.getShort(offset(i) + 10) & 0xffff;
+    }
+
+    /** Return the number of games won after record I's move by the side
+     *  that made it. */
+    int wins(int i) {
+        return _data.getInt(offset(i) + 12);
+    }
+
+    /** Return the number of games drawn after record I's move. */
+    int draws(int i) {
+        return _data.getInt(offset(i) + 16);
+    }
+
+    /** Return the number of games lost after record I's move by the side
+     *  that made it. */
+    int losses(int i) {
+        return _data.getInt(offset(i) + 20);
+    }
+
+    /** Return a book move for the position on BOARD, or Move.NONE if the
+     *  book has no legal move of positive weight for it.  If RANDINT is
+     *  null, the move is the one of greatest weight (the first such in
+     *  the book, if there are several).  Otherwise, each move is chosen
+     *  with probability proportional to its weight, RANDINT.applyAsInt(N)
+     *  returning a random integer in [0 .. N). */
+    int move(Board board, IntUnaryOperator randInt) {
+        long key = board.key();
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.generateMoves(moves);
+        int start = first(key), end = start;
+        long total = 0;
+        int best = Move.NONE, bestWeight = 0;
+        for (; end < _size && key(end) == key; end += 1) {
+            int weight = legal(move(end), moves, n) ? weight(end) : 0;
+            total += weight;
+            if (weight > bestWeight) {
+                best = move(end);
+                bestWeight = weight;
+            }
+        }
+        if (total == 0 || randInt == null) {
+            return best;
+        }
+        int r = randInt.applyAsInt((int) Math.min(total, Integer.MAX_VALUE));
+        for (int i = start; i < end; i += 1) {
+            int weight = legal(move(i), moves, n) ? weight(i) : 0;
+            if (r < weight) {
+                return move(i);
+            }
+            r -= weight;
+        }
+        return best;
+    }
+
+    /** Return true iff MOVE is among the first N codes in MOVES. */
+    private static boolean legal(int move, int[] moves, int n) {
+        for (int i = 0; i < n; i += 1) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the byte offset of record I. */
+    private static int offset(int i) {
+        return HEADER + i * RECORD;
+    }
+
+    /** The mapped file.  Only absolute gets are used, so threads do not
+     *  disturb one another. */
+    private final ByteBuffer _data;
+    /** Number of records. */
+    private final int _size;
+
+}
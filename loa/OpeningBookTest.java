@@ -0,0 +1,133 @@
+package loa;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of OpeningBook and BookBuilder.
+ *  @author Tara Calista
+ */
+public class OpeningBookTest {
+
+    /** Return N random games of at most PLIES plies each.  Game G is
+     *  seeded with G % 3, so games 0, 3, 6, ... are the same. */
+    static List<int[]> randomGames(int n, int plies) {
+        List<int[]> games = new ArrayList<>();
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int g = 0; g < n; g += 1) {
+            Random random = new Random(g % 3);
+            Board board = new Board();
+            int[] game = new int[plies];
+            int k;
+            for (k = 0; k < plies && !board.gameOver(); k += 1) {
+                int m = board.generateMoves(moves);
+                game[k] = moves[random.nextInt(m)];
+                board.makeMove(game[k]);
+            }
+            games.add(Arrays.copyOf(game, k));
+        }
+        return games;
+    }
+
+    @Test
+    public void bookHasEveryMovePlayed() throws IOException {
+        List<int[]> games = randomGames(7, 30);
+        BookBuilder builder = new BookBuilder(BookBuilder.PLIES, 3);
+        for (int[] game : games) {
+            builder.add(game);
+        }
+        Path file = Files.createTempFile("loa", ".book");
+        try {
+            builder.write(file);
+            OpeningBook book = new OpeningBook(file);
+            assertEquals(builder.size(), book.size());
+            for (int i = 1; i < book.size(); i += 1) {
+                assertTrue(book.key(i - 1) <= book.key(i));
+            }
+
+            Board board = new Board();
+            int total = 0;
+            for (int i = book.first(board.key());
+                 i < book.size() && book.key(i) == board.key(); i += 1) {
+                total += book.wins(i) + book.draws(i) + book.losses(i);
+                assertTrue(board.isLegal(Move.decode(book.move(i))));
+            }
+            assertEquals(games.size(), total);
+
+            int best = book.move(board, null);
+            assertEquals(games.get(0)[0], best);
+            Random random = new Random(0);
+            for (int k = 0; k < 10; k += 1) {
+                int move = book.move(board, random::nextInt);
+                assertTrue(move == games.get(0)[0]
+                           || move == games.get(1)[0]);
+            }
+            for (int[] game : games) {
+                board.makeMove(game[0]);
+                int move = book.move(board, random::nextInt);
+                assertTrue(move == Move.NONE || board.isLegal(
+                               Move.decode(move)));
+                board.retract();
+            }
+            board.makeMove(games.get(0)[0]);
+            board.makeMove(games.get(0)[1]);
+            board.makeMove(games.get(0)[2]);
+            board.makeMove(games.get(0)[3]);
+            assertEquals(games.get(0)[4], book.move(board, null));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void gamesFileRoundTrip() throws IOException {
+        List<int[]> games = randomGames(2, 20);
+        Path file = Files.createTempFile("loa", ".games");
+        try {
+            try (PrintWriter out =
+                 new PrintWriter(Files.newBufferedWriter(file))) {
+                out.println("# two games");
+                for (int[] game : games) {
+                    BookBuilder.writeGame(out, game);
+                }
+            }
+            List<int[]> read = BookBuilder.readGames(file);
+            assertEquals(games.size(), read.size());
+            for (int g = 0; g < games.size(); g += 1) {
+                assertArrayEquals(games.get(g), read.get(g));
+            }
+            Files.writeString(file, "d1-d3 d3-d5\n");
+            try {
+                BookBuilder.readGames(file);
+                fail("illegal game accepted");
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("loa", ".book");
+        try {
+            Files.writeString(file, "not a book, but long enough");
+            new OpeningBook(file);
+            fail("other file accepted");
+        } catch (IOException excp) {
+            /* Expected. */
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package loa;
+
+import java.io.PrintStream;
+
+/** Move-generation counting ("perft").  The perft count of a position to
+ *  depth D is the number of distinct sequences of D legal moves from that
+ *  position, where a position in which either side's pieces are
+ *  contiguous ends the game and has no moves.  Comparing these counts
+ *  against known values checks move generation; timing them measures its
+ *  speed.
+ *  @author Tara Calista
+ */
+class Perft {
+
+    /** A counter for positions reachable from BOARD, which is copied. */
+    Perft(Board board) {
+        _board = new Board(board);
+    }
+
+    /** Return the perft count of BOARD to DEPTH >= 0. */
+    static long count(Board board, int depth) {
+        return new Perft(board).count(depth);
+    }
+
+    /** Return the perft count of my position to DEPTH >= 0. */
+    long count(int depth) {
+        ensureDepth(depth);
+        return count(depth, 0);
+    }
+
+    /** Return the perft counts to DEPTH >= 1 of the positions after each
+     *  legal move of my position, in the order of Board.generateMoves.
+     *  The moves themselves are stored in MOVES, which must have room
+     *  for Board.MAX_MOVES entries; the number of moves is the length of
+     *  the result. */
+    long[] divide(int depth, int[] moves) {
+        ensureDepth(depth);
+        if (_board.gameOver()) {
+            return new long[0];
+        }
+        int n = _board.generateMoves(moves);
+        long[] result = new long[n];
+        for (int i = 0; i < n; i += 1) {
+            _board.makeMove(moves[i]);
+            result[i] = count(depth - 1, 1);
+            _board.retract();
+        }
+        return result;
+    }
+
+    /** Print the perft count of my position to DEPTH on OUT, with the
+     *  elapsed time and leaf nodes per second, preceded by the count for
+     *  each legal move if DIVIDE. */
+    void report(int depth, boolean divide, PrintStream out) {
+        long start = System.nanoTime();
+        long total;
+        if (divide && depth > 0) {
+            int[] moves = new int[Board.MAX_MOVES];
+            long[] counts = divide(depth, moves);
+            total = 0;
+            for (int i = 0; i < counts.length; i += 1) {
+                out.printf("%s: %d%n", Move.decode(moves[i]), counts[i]);
+                total += counts[i];
+            }
+        } else {
+            total = count(depth);
+        }
+        double secs = (System.nanoTime() - start) * 1e-9;
+        out.printf("perft(%d) = %d  [%.3f s, %.0f nodes/s]%n", depth, total,
+                   secs, total / Math.max(secs, 1e-9));
+    }
+
+    /** Return the perft count to DEPTH of the current position of _board,
+     *  which is PLY moves from the starting position. */
+    private long count(int depth, int ply) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (_board.gameOver()) {
+            return 0;
+        }
+        int[] moves = _moves[ply];
+        int n = _board.generateMoves(moves);
+        if (depth == 1) {
+            return n;
+        }
+        long total = 0;
+        for (int i = 0; i < n; i += 1) {
+            _board.makeMove(moves[i]);
+            total += count(depth - 1, ply + 1);
+            _board.retract();
+        }
+        return total;
+    }
+
+    /** Make sure there are move buffers for a search to DEPTH. */
+    private void ensureDepth(int depth) {
+        if (_moves.length < depth) {
+            _moves = new int[depth][Board.MAX_MOVES];
+        }
+    }
+
+    /** The position being counted. */
+    private final Board _board;
+    /** Move buffers, one per ply. */
+    private int[][] _moves = new int[0][];
+
+}
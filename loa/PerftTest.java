@@ -0,0 +1,57 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Checks move generation against the reference counts in loa/perft.txt.
+ *  @author Tara Calista
+ */
+public class PerftTest {
+
+    @Test
+    public void referenceCounts() throws IOException {
+        BufferedReader table = new BufferedReader(new InputStreamReader(
+            PerftTest.class.getClassLoader()
+            .getResourceAsStream("loa/perft.txt")));
+        int positions = 0;
+        for (String line = table.readLine(); line != null;
+             line = table.readLine()) {
+            if (line.startsWith("#") || line.trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\|");
+            Board board = new Board(fields[1]);
+            assertEquals(fields[1].trim(), board.position());
+            Perft perft = new Perft(board);
+            String[] counts = fields[2].trim().split("\\s+");
+            for (int d = 1; d <= counts.length; d += 1) {
+                assertEquals(fields[0].trim() + " depth " + d,
+                             Long.parseLong(counts[d - 1]), perft.count(d));
+            }
+            positions += 1;
+        }
+        table.close();
+        assertTrue(positions > 0);
+    }
+
+    @Test
+    public void divideSumsToCount() {
+        Board board = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        long[] counts = new Perft(board).divide(3, moves);
+        long total = 0;
+        for (int i = 0; i < counts.length; i += 1) {
+            board.makeMove(moves[i]);
+            assertEquals(Perft.count(board, 2), counts[i]);
+            board.retract();
+            total += counts[i];
+        }
+        assertEquals(Perft.count(board, 3), total);
+        assertEquals(1, Perft.count(board, 0));
+    }
+
+}
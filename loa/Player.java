@@ -17,6 +17,18 @@ public abstract class Player {
      *  that side() == getBoard.turn(). */
     abstract Move makeMove();
 
+    /** Stop anything I am doing in the background, because the game is
+     *  over or I am being replaced.  By default, does nothing. */
+    void stopThinking() {
+    }
+
+    /** Stop thinking and release for good whatever I hold, such as
+     *  threads, because I am being dropped from my game.  By default,
+     *  just stops thinking. */
+    void release() {
+        stopThinking();
+    }
+
     /** Return which side I'm playing. */
     Piece side() {
         return _side;
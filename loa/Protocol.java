@@ -0,0 +1,478 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+import static loa.Piece.*;
+
+/** A text protocol, in the style of UCI, by which another program (a
+ *  graphical interface or a tournament manager) can drive the engine.
+ *  Run with java loa.Main --protocol.  The commands, one per line, are
+ *      uci          Identify the engine; answered by id and option lines
+ *                   and then uciok.
+ *      isready      Answered by readyok, at once, even during a search.
+ *      setoption name Hash|Threads value N
+ *                   Set the transposition table's size in megabytes or
+ *                   the number of searching threads.
+ *      ucinewgame   Forget everything learned in earlier searches.
+ *      position (startpos | board POS) [moves M ...]
+ *                   Set the position to the initial one or to the
+ *                   one-line position POS (see Board.POSITION), followed
+ *                   by the moves M (e.g., d1-d3).
+ *      go [wtime MS] [btime MS] [winc MS] [binc MS] [movestogo N]
+ *         [movetime MS] [depth N] [nodes N] [infinite]
+ *                   Search the position, within the limits given (by
+ *                   default those on the command line), and print
+ *                   bestmove M.  With infinite, search until stop.
+ *      stop         End the search at once.
+ *      quit         Exit.
+ *  After each iteration of a search, it prints
+ *      info depth D score (cp S | mate N) nodes N nps N time MS pv M ...
+ *  where mate N is a win (or with N < 0, a loss) in N moves.
+ *
+ *  A thread of its own reads the input and queues each line for the
+ *  command thread (the one that calls run()), which waits on the queue
+ *  without a lock and wakes as soon as a line arrives.  Searches run on
+ *  a third thread, so stop, isready and quit are handled while one is in
+ *  progress, and stop ends it within a few thousand nodes.
+ *  @author Tara Calista
+ */
+class Protocol {
+
+    /** Moves assumed to remain in the game when go gives clock times
+     *  but not movestogo. */
+    static final int MOVES_TO_GO = 30;
+
+    /** Milliseconds kept in hand on each move for communication. */
+    static final long MOVE_OVERHEAD = 30;
+
+    /** A Protocol that reads commands from INPUT and writes replies to
+     *  OUTPUT, for an engine configured by CONFIG.  CONFIG's budgets are
+     *  the defaults for go; it is not modified. */
+    Protocol(EngineConfig config, BufferedReader input, PrintStream output) {
+        _defaults = config;
+        _config = config.copy();
+        _input = input;
+        _output = output;
+        _search = SearchStrategy.create(_config);
+        _search.setListener(this::iterationDone);
+        _solver = _config.solver
+            ? new Solver(_config.solverKilobytes, _config.solverDepth)
+            : null;
+        _thinker = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "loa-protocol-search");
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    /** Read and carry out commands until quit or the end of the input. */
+    void run() {
+        _commandThread = Thread.currentThread();
+        Thread reader = new Thread(this::readInput, "loa-protocol-input");
+        reader.setDaemon(true);
+        reader.start();
+        while (true) {
+            String line = _commands.poll();
+            if (line == null) {
+                LockSupport.park(this);
+            } else if (!execute(line.trim())) {
+                break;
+            }
+        }
+        awaitSearch();
+        _search.shutdown();
+        _thinker.shutdownNow();
+    }
+
+    /** Queue each line of input for the command thread, and then quit. */
+    private void readInput() {
+        try {
+            String line;
+            while ((line = _input.readLine()) != null) {
+                enqueue(line);
+            }
+        } catch (IOException excp) {
+            Reporter.debug(1, "protocol input failed: %s",
+                           excp.getMessage());
+        }
+        enqueue("quit");
+    }
+
+    /** Queue LINE and wake the command thread. */
+    private void enqueue(String line) {
+        _commands.offer(line);
+        LockSupport.unpark(_commandThread);
+    }
+
+    /** Carry out the command LINE, returning false iff it is quit. */
+    private boolean execute(String line) {
+        String[] words = line.split("\\s+");
+        switch (words[0]) {
+        case "":
+            break;
+        case "uci":
+            send("id name Lines of Action %s", Main.VERSION);
+            send("id author Tara Calista");
+            send("option name Hash type spin default %d min 1 max 4096",
+                 _defaults.hashMegabytes);
+            send("option name Threads type spin default %d min 1 max 256",
+                 _defaults.threads);
+            send("uciok");
+            break;
+        case "isready":
+            send("readyok");
+            break;
+        case "setoption":
+            setOption(words);
+            break;
+        case "ucinewgame":
+            awaitSearch();
+            _search.table().clear();
+            if (_solver != null) {
+                _solver.clear();
+            }
+            break;
+        case "position":
+            awaitSearch();
+            position(words);
+            break;
+        case "go":
+            go(words);
+            break;
+        case "stop":
+            stop();
+            break;
+        case "quit":
+            stop();
+            return false;
+        default:
+            send("info string unknown command: %s", words[0]);
+            break;
+        }
+        return true;
+    }
+
+    /** Carry out setoption WORDS. */
+    private void setOption(String[] words) {
+        if (words.length != 5 || !words[1].equals("name")
+            || !words[3].equals("value")) {
+            send("info string usage: setoption name NAME value N");
+            return;
+        }
+        int value;
+        try {
+            value = Math.max(1, Integer.parseInt(words[4]));
+        } catch (NumberFormatException excp) {
+            send("info string bad value: %s", words[4]);
+            return;
+        }
+        awaitSearch();
+        if (words[2].equalsIgnoreCase("Hash")) {
+            _config.hashMegabytes = value;
+        } else if (words[2].equalsIgnoreCase("Threads")) {
+            _config.threads = value;
+        } else {
+            send("info string unknown option: %s", words[2]);
+            return;
+        }
+        _search.shutdown();
+        _search = SearchStrategy.create(_config);
+        _search.setListener(this::iterationDone);
+    }
+
+    /** Carry out position WORDS, leaving the position as it was if WORDS
+     *  are not a valid position command. */
+    private void position(String[] words) {
+        Board board;
+        int k;
+        try {
+            if (words.length >= 2 && words[1].equals("startpos")) {
+                board = new Board();
+                k = 2;
+            } else if (words.length >= 4 && words[1].equals("board")) {
+                board = new Board(words[2] + " " + words[3]);
+                k = 4;
+            } else {
+                send("info string usage: position (startpos | board POS) "
+                     + "[moves M ...]");
+                return;
+            }
+        } catch (IllegalArgumentException excp) {
+            send("info string %s", excp.getMessage());
+            return;
+        }
+        if (k < words.length && words[k].equals("moves")) {
+            k += 1;
+        }
+        for (; k < words.length; k += 1) {
+            Move move = Move.create(words[k], board);
+            if (move == null || board.gameOver() || !board.isLegal(move)
+                || move.movedPiece() != board.turn()) {
+                send("info string illegal move: %s", words[k]);
+                return;
+            }
+            board.makeMove(move);
+        }
+        _board = board;
+    }
+
+    /** Carry out go WORDS: set the budgets of my configuration from
+     *  WORDS and start a search of the current position. */
+    private void go(String[] words) {
+        if (_thinking != null && !_thinking.isDone()) {
+            send("info string already searching");
+            return;
+        }
+        _thinking = null;
+        long[] clock = { -1, -1, 0, 0 };
+        long moveTime = -1, nodes = -1, depth = -1, movesToGo = 0;
+        boolean infinite = false;
+        try {
+            for (int k = 1; k < words.length; k += 1) {
+                switch (words[k]) {
+                case "infinite":
+                    infinite = true;
+                    continue;
+                case "ponder":
+                    continue;
+                default:
+                    break;
+                }
+                if (k + 1 >= words.length) {
+                    throw new NumberFormatException(words[k]);
+                }
+                long value = Math.max(0, Long.parseLong(words[k + 1]));
+                switch (words[k]) {
+                case "wtime":
+                    clock[WP.ordinal()] = value;
+                    break;
+                case "btime":
+                    clock[BP.ordinal()] = value;
+                    break;
+                case "winc":
+                    clock[2 + WP.ordinal()] = value;
+                    break;
+                case "binc":
+                    clock[2 + BP.ordinal()] = value;
+                    break;
+                case "movestogo":
+                    movesToGo = value;
+                    break;
+                case "movetime":
+                    moveTime = value;
+                    break;
+                case "depth":
+                    depth = value;
+                    break;
+                case "nodes":
+                    nodes = value;
+                    break;
+                default:
+                    send("info string unknown go option: %s", words[k]);
+                    break;
+                }
+                k += 1;
+            }
+        } catch (NumberFormatException excp) {
+            send("info string bad go command: %s", excp.getMessage());
+            return;
+        }
+
+        Board board = new Board(_board);
+        int side = board.turn().ordinal();
+        _config.moveTime = _defaults.moveTime;
+        _config.moveNodes = _defaults.moveNodes;
+        _config.maxDepth = _defaults.maxDepth;
+        if (infinite) {
+            _config.moveTime = _config.moveNodes = 0;
+            _config.maxDepth = Search.MAX_PLY;
+        }
+        if (moveTime >= 0) {
+            _config.moveTime = Math.max(1, moveTime);
+        } else if (clock[side] >= 0) {
+            _config.moveTime = allot(clock[side], clock[2 + side],
+                                     movesToGo);
+        }
+        if (nodes >= 0) {
+            _config.moveNodes = nodes;
+        }
+        if (depth >= 0) {
+            _config.maxDepth = (int) Math.max(1, depth);
+        }
+        _stopRequested = false;
+        _stopped = new CountDownLatch(1);
+        _root = board;
+        boolean waitForStop = infinite;
+        _thinking = _thinker.submit(() -> think(board, waitForStop));
+    }
+
+    /** Return the milliseconds to spend on a move when my clock shows
+     *  TIME milliseconds, with an increment of INCREMENT per move and
+     *  MOVESTOGO moves to go before more time (0 if unknown). */
+    static long allot(long time, long increment, long movesToGo) {
+        long moves = movesToGo > 0 ? movesToGo : MOVES_TO_GO;
+        long share = time / moves + increment * 3 / 4;
+        return Math.max(1, Math.min(share, time - MOVE_OVERHEAD));
+    }
+
+    /** Choose a move for BOARD, from the book, by the Solver or by my
+     *  search, and print it.  If WAITFORSTOP, print it only after stop. */
+    private void think(Board board, boolean waitForStop) {
+        int move = Move.NONE;
+        if (_config.book != null) {
+            move = _config.book.move(board, null);
+        }
+        if (move == Move.NONE && _solver != null && !waitForStop
+            && Solver.worthTrying(board, _config) && !_stopRequested
+            && _solver.solve(board, _config.solverNodes) == Solver.PROVEN) {
+            move = _solver.move();
+            send("info string solver proved a win");
+        }
+        if (move == Move.NONE) {
+            move = _search.bestMove(board);
+        }
+        if (waitForStop) {
+            try {
+                _stopped.await();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        send("bestmove %s", move == Move.NONE ? "(none)"
+             : Move.decode(move).toString());
+    }
+
+    /** Print an info line for an iteration to DEPTH that chose MOVE with
+     *  score SCORE, having visited NODES nodes in ELAPSED milliseconds.
+     *  Passes on any stop() that came before the search began. */
+    private void iterationDone(int depth, int move, int score, long nodes,
+                               long elapsed) {
+        if (_stopRequested) {
+            _search.stop();
+        }
+        String value;
+        if (Math.abs(score) >= Search.WIN - Search.MAX_PLY) {
+            int plies = Search.WIN - Math.abs(score);
+            value = String.format("mate %d", score > 0 ? (plies + 1) / 2
+                                  : -(plies / 2));
+        } else {
+            value = String.format("cp %d", score);
+        }
+        send("info depth %d score %s nodes %d nps %d time %d pv %s", depth,
+             value, nodes, nodes * 1000 / Math.max(1, elapsed), elapsed,
+             principalVariation(move, depth));
+    }
+
+    /** Return the moves, separated by blanks, of the principal variation
+     *  from the root of the current search: MOVE, followed by the best
+     *  moves stored in the transposition table, to at most DEPTH moves,
+     *  stopping at an illegal or repeated position. */
+    private String principalVariation(int move, int depth) {
+        Board board = new Board(_root);
+        StringBuilder result = new StringBuilder();
+        int[] moves = new int[Board.MAX_MOVES];
+        HashSet<Long> seen = new HashSet<>();
+        for (int k = 0; k < depth && move != Move.NONE; k += 1) {
+            if (board.gameOver() || !seen.add(board.key())
+                || !legal(move, moves, board.generateMoves(moves))) {
+                break;
+            }
+            if (k > 0) {
+                result.append(' ');
+            }
+            result.append(Move.decode(move));
+            board.makeMove(move);
+            move = TranspositionTable.move(_search.table().probe(board.key()));
+        }
+        return result.toString();
+    }
+
+    /** Return true iff MOVE is among the first N codes in MOVES. */
+    private static boolean legal(int move, int[] moves, int n) {
+        for (int i = 0; i < n; i += 1) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** End any search in progress at once. */
+    private void stop() {
+        _stopRequested = true;
+        if (_stopped != null) {
+            _stopped.countDown();
+        }
+        if (_solver != null) {
+            _solver.stop();
+        }
+        _search.stop();
+    }
+
+    /** Stop any search in progress and wait for it to end. */
+    private void awaitSearch() {
+        if (_thinking == null) {
+            return;
+        }
+        stop();
+        try {
+            _thinking.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException excp) {
+            send("info string search failed: %s", excp.getCause());
+        }
+        _thinking = null;
+    }
+
+    /** Print a line formatted from FORMAT and ARGS, as for printf.  Lines
+     *  printed by different threads never interleave. */
+    private void send(String format, Object... args) {
+        synchronized (_output) {
+            _output.printf(format, args);
+            _output.println();
+            _output.flush();
+        }
+    }
+
+    /** The configuration given to the constructor. */
+    private final EngineConfig _defaults;
+    /** My own configuration, whose budgets are set by each go. */
+    private final EngineConfig _config;
+    /** Source of commands. */
+    private final BufferedReader _input;
+    /** Destination of replies. */
+    private final PrintStream _output;
+    /** Lines read but not yet carried out. */
+    private final ConcurrentLinkedQueue<String> _commands =
+        new ConcurrentLinkedQueue<>();
+    /** The thread that carries out commands. */
+    private volatile Thread _commandThread;
+    /** Runs searches. */
+    private final ExecutorService _thinker;
+    /** My search. */
+    private volatile SearchStrategy _search;
+    /** My Solver, or null if the configuration disables it. */
+    private final Solver _solver;
+    /** The position set by the last position command. */
+    private Board _board = new Board();
+    /** The position being searched. */
+    private volatile Board _root;
+    /** The search in progress, or null. */
+    private Future<?> _thinking;
+    /** True once stop has been called for the current search. */
+    private volatile boolean _stopRequested;
+    /** Released by stop, for go infinite. */
+    private volatile CountDownLatch _stopped;
+
+}
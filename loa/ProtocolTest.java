@@ -0,0 +1,154 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.PrintStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static loa.Piece.*;
+
+/** Tests of Protocol.
+ *  @author Tara Calista
+ */
+public class ProtocolTest {
+
+    /** Milliseconds within which a searching engine must answer isready
+     *  and stop.  The reply to stop takes about a millisecond (Search
+     *  checks for it every Search.CHECK_INTERVAL nodes); the rest allows
+     *  for thread scheduling on a busy machine. */
+    private static final long RESPONSE_MILLIS = 50;
+
+    /** A Protocol running on a thread of its own, with input written by
+     *  send and output read by await. */
+    private static class Session {
+
+        /** A session with an engine configured by CONFIG. */
+        Session(EngineConfig config) throws IOException {
+            BufferedReader input =
+                new BufferedReader(new PipedReader(_commands));
+            OutputStream output = new OutputStream() {
+                    private final StringBuilder _line = new StringBuilder();
+
+                    @Override
+                    public synchronized void write(int c) {
+                        if (c == '\n') {
+                            _lines.add(_line.toString());
+                            _line.setLength(0);
+                        } else {
+                            _line.append((char) c);
+                        }
+                    }
+                };
+            Protocol protocol =
+                new Protocol(config, input, new PrintStream(output, true));
+            _thread = new Thread(protocol::run);
+            _thread.start();
+        }
+
+        /** Send the command LINE. */
+        void send(String line) throws IOException {
+            _commands.write(line + "\n");
+            _commands.flush();
+        }
+
+        /** Return the next line of output that starts with PREFIX,
+         *  discarding the lines before it, or null if none arrives within
+         *  MILLIS milliseconds. */
+        String await(String prefix, long millis) throws InterruptedException {
+            long deadline = System.nanoTime() + millis * 1000000L;
+            while (true) {
+                String line = _lines.poll(deadline - System.nanoTime(),
+                                          TimeUnit.NANOSECONDS);
+                if (line == null || line.startsWith(prefix)) {
+                    return line;
+                }
+            }
+        }
+
+        /** End the input, and wait for the engine to quit. */
+        void close() throws IOException, InterruptedException {
+            _commands.close();
+            _thread.join(10000);
+            assertFalse("protocol did not quit", _thread.isAlive());
+        }
+
+        /** Input to the engine. */
+        private final PipedWriter _commands = new PipedWriter();
+        /** Lines of output not yet read. */
+        private final LinkedBlockingQueue<String> _lines =
+            new LinkedBlockingQueue<>();
+        /** Runs the Protocol. */
+        private final Thread _thread;
+    }
+
+    @Test
+    public void handshakeAndMate() throws Exception {
+        EngineConfig config = new EngineConfig();
+        config.solver = false;
+        Session session = new Session(config);
+        session.send("uci");
+        assertNotNull(session.await("uciok", 5000));
+        session.send("isready");
+        assertEquals("readyok", session.await("readyok", 5000));
+        session.send("position board " + SearchTest.BLACK_WINS);
+        session.send("go depth 3");
+        String info = session.await("info", 10000);
+        assertTrue(info, info.matches("info depth 1 score mate 1 nodes \\d+ "
+                                      + "nps \\d+ time \\d+ pv [a-h]\\d-"
+                                      + "[a-h]\\d"));
+        String best = session.await("bestmove", 10000);
+        Board board = new Board(SearchTest.BLACK_WINS);
+        board.makeMove(Move.create(best.split(" ")[1], board));
+        assertTrue(board.piecesContiguous(BP));
+        session.close();
+    }
+
+    @Test
+    public void stopEndsSearchPromptly() throws Exception {
+        Session session = new Session(new EngineConfig());
+        session.send("position startpos moves b1-b3 h2-f2");
+        session.send("go infinite");
+        assertNotNull(session.await("info depth 3", 20000));
+        long start = System.nanoTime();
+        session.send("isready");
+        assertEquals("readyok", session.await("readyok", 5000));
+        assertTrue((System.nanoTime() - start) / 1000000L < RESPONSE_MILLIS);
+        start = System.nanoTime();
+        session.send("stop");
+        String best = session.await("bestmove", 5000);
+        assertNotNull(best);
+        assertTrue((System.nanoTime() - start) / 1000000L < RESPONSE_MILLIS);
+        Board board = new Board();
+        board.makeMove(Move.create("b1-b3", board));
+        board.makeMove(Move.create("h2-f2", board));
+        Move move = Move.create(best.split(" ")[1], board);
+        assertTrue(board.isLegal(move) && move.movedPiece() == BP);
+        session.close();
+    }
+
+    @Test
+    public void clockTimeAndErrors() throws Exception {
+        Session session = new Session(new EngineConfig());
+        session.send("position startpos moves a1-a3");
+        assertTrue(session.await("info string", 5000).contains("a1-a3"));
+        session.send("position startpos moves b1-b3");
+        long start = System.nanoTime();
+        session.send("go wtime 3000 btime 60000 winc 0 binc 0");
+        String best = session.await("bestmove", 5000);
+        assertNotNull(best);
+        assertTrue((System.nanoTime() - start) / 1000000L < 1500);
+        assertEquals(100, Protocol.allot(3000, 0, 0));
+        assertEquals(1000 + 750, Protocol.allot(10000, 1000, 10));
+        assertEquals(1, Protocol.allot(10, 0, 0));
+        session.send("frobnicate");
+        assertTrue(session.await("info string", 5000).contains("frobnicate"));
+        session.close();
+    }
+
+}
@@ -0,0 +1,672 @@
+package loa;
+
+import static loa.Piece.*;
+import static loa.TranspositionTable.*;
+
+/** An iterative-deepening negamax search with alpha-beta pruning.  A
+ *  Search owns the Board it searches and all its scratch space, so it
+ *  must be confined to one thread at a time (see Board).
+ *  @author Tara Calista
+ */
+class Search {
+
+    /** Greatest number of plies searched from the root. */
+    static final int MAX_PLY = 64;
+
+    /** Score of a position in which the side to move has won.  A win N
+     *  plies from the root scores WIN - N, so that faster wins are
+     *  preferred. */
+    static final int WIN = 1000000;
+
+    /** A bound on the magnitude of all scores. */
+    static final int INFINITY = WIN + 1;
+
+    /** Number of nodes between checks of the time and node budgets and
+     *  of stop(): few enough that a stop takes effect well within a
+     *  millisecond. */
+    private static final int CHECK_INTERVAL = 256;
+
+    /** A Search governed by the settings in CONFIG, with its own
+     *  transposition table. */
+    Search(EngineConfig config) {
+        this(config, new TranspositionTable(config.hashMegabytes));
+    }
+
+    /** A Search governed by the settings in CONFIG that records its
+     *  results in TABLE, which may be shared with other Searches. */
+    Search(EngineConfig config, TranspositionTable table) {
+        this(config, table, 0);
+    }
+
+    /** A Search as for Search(CONFIG, TABLE) that acts as helper number
+     *  HELPER in a parallel search if HELPER > 0 (see LazySmp).  A helper
+     *  ignores the budgets in CONFIG and runs until stopped, leaves the
+     *  table's age alone, reports nothing, starts with its root moves
+     *  rotated by HELPER places, and if HELPER is odd searches each
+     *  iteration one ply deeper than the main search would. */
+    Search(EngineConfig config, TranspositionTable table, int helper) {
+        _config = config;
+        _table = table;
+        _helper = helper;
+        _evalCache = config.evalCacheKilobytes > 0
+            ? new EvalCache(config.evalCacheKilobytes) : null;
+    }
+
+    /** Return my transposition table. */
+    TranspositionTable table() {
+        return _table;
+    }
+
+    /** Return the code of the best move found for the side to move in
+     *  BOARD, or Move.NONE if there is no legal move.  Searches to
+     *  successively greater depths until the budgets in my configuration
+     *  run out or stop() is called, and returns the best move of the last
+     *  iteration that completed.  The first iteration always completes.
+     *  BOARD itself is not modified. */
+    int bestMove(Board board) {
+        _stop = false;
+        return search(board);
+    }
+
+    /** As for bestMove(BOARD), except that a stop() that arrives before
+     *  the search starts still ends it: a helper started with search
+     *  cannot miss the request to stop. */
+    int search(Board board) {
+        return search(board, true);
+    }
+
+    /** As for search(BOARD), but if TIMED is false, ignoring the time and
+     *  node budgets, so that the search runs until stop() is called or
+     *  it reaches EngineConfig.maxDepth (as when pondering). */
+    int search(Board board, boolean timed) {
+        _board.copyFrom(board);
+        _aborted = false;
+        _nodes = 0;
+        _depth = 0;
+        _score = 0;
+        _start = System.nanoTime();
+        timed = timed && !_config.deterministic;
+        _deadline = _config.moveTime > 0 && timed
+            ? _start + _config.moveTime * 1000000L : Long.MAX_VALUE;
+        _nodeLimit = timed ? _config.moveNodes : 0;
+        if (_helper == 0) {
+            _table.newSearch();
+        }
+        clearOrdering();
+
+        int[] rootMoves = _moves[0];
+        int n = _board.gameOver() ? 0 : _board.generateMoves(rootMoves);
+        if (n == 0) {
+            return Move.NONE;
+        }
+        if (_helper > 0) {
+            rotate(rootMoves, n, _helper % n);
+        }
+        int best = rootMoves[0];
+        int limit = Math.min(_config.maxDepth, MAX_PLY - 1);
+        for (int d = 1; d <= limit; d += 1) {
+            int depth = Math.min(d + (_helper & 1), MAX_PLY - 1);
+            _iterationDepth = d;
+            _abortable = d > 1;
+            _researches = _aspirationResearches = 0;
+            int bestIndex = searchIteration(depth, n);
+            if (_aborted) {
+                break;
+            }
+            best = rootMoves[bestIndex];
+            rootMoves[bestIndex] = rootMoves[0];
+            rootMoves[0] = best;
+            _depth = depth;
+            _score = _rootScore;
+            _table.store(_board.key(), best, depth, EXACT,
+                         toTable(_score, 0));
+            if (_helper == 0) {
+                Reporter.debug(1, "depth %d: %s score %d (%d nodes, %d ms, "
+                               + "%.1f%% of cutoffs on first move, "
+                               + "%d PVS and %d aspiration re-searches)",
+                               depth, Move.decode(best), _score, _nodes,
+                               elapsed(), 100.0 * _firstCutoffs
+                               / Math.max(1, _cutoffs), _researches,
+                               _aspirationResearches);
+                SearchStrategy.Listener listener = _listener;
+                if (listener != null) {
+                    listener.iterationDone(depth, best, _score, _nodes,
+                                           elapsed());
+                }
+            }
+            if (Math.abs(_score) >= WIN - MAX_PLY) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /** Return the value for the side to move of POSITION, a node PLY
+     *  plies from the root of a larger search, searched serially to DEPTH
+     *  plies as for negamax: exact if strictly between ALPHA and BETA and
+     *  otherwise a bound on the same side of the window.  This is how
+     *  ForkJoinSearch searches below its split points.  Unless ABORTABLE
+     *  is false, the search ends early, with aborted() true and a
+     *  meaningless result, when stop() is called or System.nanoTime()
+     *  passes DEADLINE.  POSITION itself is not modified. */
+    int subtree(Board position, int depth, int ply, int alpha, int beta,
+                boolean abortable, long deadline) {
+        _board.copyFrom(position);
+        _aborted = false;
+        _nodes = 0;
+        _abortable = abortable;
+        _deadline = deadline;
+        _nodeLimit = 0;
+        return negamax(depth, ply, alpha, beta);
+    }
+
+    /** Return true iff the last search or subtree was cut short. */
+    boolean aborted() {
+        return _aborted;
+    }
+
+    /** Rotate the first N entries of MOVES left by K places. */
+    private static void rotate(int[] moves, int n, int k) {
+        int[] first = new int[k];
+        System.arraycopy(moves, 0, first, 0, k);
+        System.arraycopy(moves, k, moves, 0, n - k);
+        System.arraycopy(first, 0, moves, n - k, k);
+    }
+
+    /** Ask a search in progress (in another thread) to finish as soon as
+     *  possible. */
+    void stop() {
+        _stop = true;
+    }
+
+    /** Tell LISTENER of each iteration my searches complete, or no one
+     *  if LISTENER is null.  Helpers never tell it. */
+    void setListener(SearchStrategy.Listener listener) {
+        _listener = listener;
+    }
+
+    /** Cancel any earlier stop(), before starting a search with
+     *  search(Board). */
+    void reset() {
+        _stop = false;
+    }
+
+    /** Return the number of nodes visited by the last search. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the depth of the last completed iteration of the last
+     *  search. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the score, for the side to move, of the last completed
+     *  iteration of the last search. */
+    int score() {
+        return _score;
+    }
+
+    /** Return the milliseconds elapsed since the last search began. */
+    long elapsed() {
+        return (System.nanoTime() - _start) / 1000000L;
+    }
+
+    /** Search the first N moves in _moves[0] to DEPTH, setting
+     *  _rootScore to the value of the best, and return its index.  After
+     *  the first iteration, the search starts with an aspiration window
+     *  of EngineConfig.aspirationWindow either side of the last
+     *  iteration's score, and widens it on the side that fails, twice as
+     *  far each time, until the score falls inside. */
+    private int searchIteration(int depth, int n) {
+        int delta = _config.aspirationWindow;
+        if (_iterationDepth == 1 || delta <= 0
+            || Math.abs(_score) >= WIN - MAX_PLY) {
+            return searchRoot(depth, n, -INFINITY, INFINITY);
+        }
+        int low = _score - delta, high = _score + delta;
+        while (true) {
+            int bestIndex = searchRoot(depth, n, low, high);
+            if (_aborted) {
+                return bestIndex;
+            } else if (_rootScore <= low) {
+                low = Math.max(low - delta, -INFINITY);
+            } else if (_rootScore >= high) {
+                high = Math.min(high + delta, INFINITY);
+            } else {
+                return bestIndex;
+            }
+            _aspirationResearches += 1;
+            delta *= 2;
+        }
+    }
+
+    /** Search the first N moves in _moves[0] to DEPTH within the window
+     *  (ALPHA, BETA), setting _rootScore to the value of the best, and
+     *  return its index.  _rootScore is exact if it lies within the
+     *  window, and otherwise a bound on the same side.  Of equally good
+     *  moves, returns the first. */
+    private int searchRoot(int depth, int n, int alpha, int beta) {
+        int[] moves = _moves[0];
+        int best = -INFINITY, bestIndex = 0;
+        for (int i = 0; i < n; i += 1) {
+            _board.makeMove(moves[i]);
+            int v = searchChild(depth - 1, 0, i, alpha, beta, 0);
+            _board.retract();
+            if (_aborted) {
+                break;
+            }
+            if (v > best) {
+                best = v;
+                if (v > alpha) {
+                    alpha = v;
+                    bestIndex = i;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        _rootScore = best;
+        return bestIndex;
+    }
+
+    /** Return the value, for the side that moved, of the INDEXth move
+     *  tried from a node PLY plies from the root with window (ALPHA,
+     *  BETA), which has just been made, searched to DEPTH plies.  With
+     *  EngineConfig.pvs, each move after the first is first searched
+     *  with a null window, and searched again with the full window only
+     *  if it proves better than ALPHA.  If REDUCTION > 0, the move is
+     *  first searched REDUCTION plies less deep with a null window, and
+     *  searched to the full depth only if that proves it better than
+     *  ALPHA. */
+    private int searchChild(int depth, int ply, int index,
+                            int alpha, int beta, int reduction) {
+        if (index == 0) {
+            return -negamax(depth, ply + 1, -beta, -alpha);
+        }
+        if (reduction > 0) {
+            int v = -negamax(depth - reduction, ply + 1, -alpha - 1, -alpha);
+            if (v <= alpha || _aborted) {
+                return v;
+            }
+            _reductionResearches += 1;
+        }
+        if (!_config.pvs) {
+            return -negamax(depth, ply + 1, -beta, -alpha);
+        }
+        int v = -negamax(depth, ply + 1, -alpha - 1, -alpha);
+        if (v > alpha && v < beta && !_aborted) {
+            _researches += 1;
+            v = -negamax(depth, ply + 1, -beta, -alpha);
+        }
+        return v;
+    }
+
+    /** Return the value of the current position for the side to move,
+     *  searched to DEPTH plies, PLY plies from the root.  The result is
+     *  exact if it lies strictly between ALPHA and BETA; otherwise it is
+     *  a bound on the same side of the window. */
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        _nodes += 1;
+        if (_nodes % CHECK_INTERVAL == 0) {
+            checkBudget();
+        }
+        if (_aborted) {
+            return 0;
+        }
+        Piece turn = _board.turn();
+        if (_board.piecesContiguous(turn)) {
+            return WIN - ply;
+        } else if (_board.piecesContiguous(turn.opposite())) {
+            return -(WIN - ply);
+        }
+        if (depth == 0 || ply >= MAX_PLY - 1) {
+            return evaluate();
+        }
+
+        long key = _board.key();
+        long entry = _table.probe(key);
+        int tableMove = Move.NONE;
+        if (entry != 0) {
+            tableMove = TranspositionTable.move(entry);
+            if (!_config.deterministic
+                && TranspositionTable.depth(entry) >= depth) {
+                int v = fromTable(TranspositionTable.score(entry), ply);
+                int bound = bound(entry);
+                if (bound == EXACT || bound == LOWER && v >= beta
+                    || bound == UPPER && v <= alpha) {
+                    return v;
+                }
+            }
+        }
+
+        if (beta - alpha == 1 && tryNullMove(depth, ply, beta)) {
+            int v = -negamax(Math.max(0, depth - 1
+                                      - _config.nullMoveReduction),
+                             ply + 1, -beta, -beta + 1);
+            _board.passTurn();
+            _afterNull[ply + 1] = false;
+            if (_aborted) {
+                return 0;
+            }
+            if (v >= beta) {
+                _nullCutoffs += 1;
+                return v >= WIN - MAX_PLY ? beta : v;
+            }
+        }
+
+        int[] moves = _moves[ply];
+        int n = _board.generateMoves(moves);
+        if (n == 0) {
+            return evaluate();
+        }
+        scoreMoves(ply, n, tableMove);
+        boolean reduce = _config.lateMoveReductions && !_config.deterministic
+            && depth >= _config.lmrMinDepth;
+        int alpha0 = alpha;
+        int best = -INFINITY, bestMove = Move.NONE;
+        for (int i = 0; i < n; i += 1) {
+            int move = nextMove(ply, i, n);
+            int reduction = 0;
+            if (reduce && i >= _config.lmrMoveIndex
+                && _keys[ply][i] < KILLER_KEY - 1) {
+                reduction = Math.min(_config.lmrReduction, depth - 1);
+                _reductions += 1;
+            }
+            _board.makeMove(move);
+            int v = searchChild(depth - 1, ply, i, alpha, beta, reduction);
+            _board.retract();
+            if (_aborted) {
+                return 0;
+            }
+            if (v > best) {
+                best = v;
+                bestMove = move;
+                if (v > alpha) {
+                    alpha = v;
+                    if (alpha >= beta) {
+                        recordCutoff(ply, depth, move, i);
+                        break;
+                    }
+                }
+            }
+        }
+        int bound = best >= beta ? LOWER : best > alpha0 ? EXACT : UPPER;
+        _table.store(key, bestMove, depth, bound, toTable(best, ply));
+        return best;
+    }
+
+    /** Return true, having made a null move (see Board.passTurn), if
+     *  the node PLY plies from the root, to be searched to DEPTH plies
+     *  with a null window below BETA, should try null-move pruning: if
+     *  passing still leaves the side to move at least BETA when searched
+     *  EngineConfig.nullMoveReduction plies less deep, a real move will
+     *  surely do so too, and the node is cut off.  That assumption fails
+     *  when a move would complete a connection, so null moves are not
+     *  tried when either side has at most EngineConfig.nullMoveGroups
+     *  groups, nor right after another null move, nor in a deterministic
+     *  search. */
+    private boolean tryNullMove(int depth, int ply, int beta) {
+        if (!_config.nullMove || _config.deterministic
+            || depth < _config.nullMoveMinDepth || _afterNull[ply]) {
+            return false;
+        }
+        int groups = _config.nullMoveGroups;
+        if (_board.eulerNumber(BP) <= groups
+            || _board.eulerNumber(WP) <= groups || evaluate() < beta) {
+            return false;
+        }
+        _board.passTurn();
+        _afterNull[ply + 1] = true;
+        return true;
+    }
+
+    /* Move ordering.  Moves at each node are tried in decreasing order
+     * of a sort key: the transposition-table move first, then captures,
+     * then the two killer moves of the ply (quiet moves that recently
+     * caused cutoffs at the same ply), then the other quiet moves by
+     * their history scores (how often, weighted by depth, each
+     * from-to pair has caused cutoffs). */
+
+    /** Sort keys of the transposition-table move, captures and the two
+     *  killer moves.  History scores are kept below KILLER_KEY - 1. */
+    private static final int
+        TABLE_KEY = 1 << 30, CAPTURE_KEY = 1 << 29, KILLER_KEY = 1 << 28;
+
+    /** Set the sort keys of the N moves in _moves[PLY], where TABLEMOVE
+     *  is the move suggested by the transposition table, if any. */
+    private void scoreMoves(int ply, int n, int tableMove) {
+        int[] moves = _moves[ply], keys = _keys[ply];
+        int killer0 = _killers[ply][0], killer1 = _killers[ply][1];
+        for (int i = 0; i < n; i += 1) {
+            int move = moves[i];
+            if (move == tableMove) {
+                keys[i] = TABLE_KEY;
+            } else if (Move.isCapture(move)) {
+                keys[i] = CAPTURE_KEY;
+            } else if (move == killer0) {
+                keys[i] = KILLER_KEY;
+            } else if (move == killer1) {
+                keys[i] = KILLER_KEY - 1;
+            } else {
+                keys[i] = _history[move & 0xfff];
+            }
+        }
+    }
+
+    /** Move the entry with the largest sort key among entries I through
+     *  N - 1 of _moves[PLY] to position I, and return it. */
+    private int nextMove(int ply, int i, int n) {
+        int[] moves = _moves[ply], keys = _keys[ply];
+        int best = i;
+        for (int j = i + 1; j < n; j += 1) {
+            if (keys[j] > keys[best]) {
+                best = j;
+            }
+        }
+        int move = moves[best], key = keys[best];
+        moves[best] = moves[i];
+        keys[best] = keys[i];
+        moves[i] = move;
+        keys[i] = key;
+        return move;
+    }
+
+    /** Record that MOVE, the INDEXth tried at PLY with DEPTH plies left,
+     *  caused a beta cutoff. */
+    private void recordCutoff(int ply, int depth, int move, int index) {
+        _cutoffs += 1;
+        if (index == 0) {
+            _firstCutoffs += 1;
+        }
+        if (Move.isCapture(move)) {
+            return;
+        }
+        if (_killers[ply][0] != move) {
+            _killers[ply][1] = _killers[ply][0];
+            _killers[ply][0] = move;
+        }
+        int h = _history[move & 0xfff] + depth * depth;
+        if (h >= KILLER_KEY - 1) {
+            for (int k = 0; k < _history.length; k += 1) {
+                _history[k] /= 2;
+            }
+            h /= 2;
+        }
+        _history[move & 0xfff] = h;
+    }
+
+    /** Forget the killer moves, age the history scores and reset the
+     *  cutoff counters, before a new search. */
+    private void clearOrdering() {
+        for (int[] killers : _killers) {
+            killers[0] = killers[1] = Move.NONE;
+        }
+        for (int k = 0; k < _history.length; k += 1) {
+            _history[k] /= 2;
+        }
+        _cutoffs = _firstCutoffs = 0;
+        _nullCutoffs = _reductions = _reductionResearches = 0;
+    }
+
+    /** Return the number of moves in the last iteration of the last
+     *  search that were searched again with a full window after a
+     *  null-window search (see searchChild). */
+    int researches() {
+        return _researches;
+    }
+
+    /** Return the number of times the last iteration's aspiration window
+     *  was widened (see searchIteration). */
+    int aspirationResearches() {
+        return _aspirationResearches;
+    }
+
+    /** Return the number of nodes cut off by null moves in the last
+     *  search. */
+    long nullCutoffs() {
+        return _nullCutoffs;
+    }
+
+    /** Return the number of moves searched to reduced depth by late-move
+     *  reductions in the last search. */
+    long reductions() {
+        return _reductions;
+    }
+
+    /** Return the number of reduced moves (see reductions()) that had to
+     *  be searched again to full depth in the last search. */
+    long reductionResearches() {
+        return _reductionResearches;
+    }
+
+    /** Return the number of beta cutoffs in the last search. */
+    long cutoffs() {
+        return _cutoffs;
+    }
+
+    /** Return the number of beta cutoffs in the last search that were
+     *  caused by the first move tried. */
+    long firstMoveCutoffs() {
+        return _firstCutoffs;
+    }
+
+    /** Return SCORE, found PLY plies from the root, in the form stored
+     *  in the transposition table, where win scores count plies from the
+     *  position itself rather than from the root. */
+    static int toTable(int score, int ply) {
+        if (score >= WIN - MAX_PLY) {
+            return score + ply;
+        } else if (score <= -(WIN - MAX_PLY)) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    /** Return the score for a position PLY plies from the root that is
+     *  stored in the transposition table as SCORE. */
+    private static int fromTable(int score, int ply) {
+        if (score >= WIN - MAX_PLY) {
+            return score - ply;
+        } else if (score <= -(WIN - MAX_PLY)) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    /** Set _aborted if the current search has used up its budget or has
+     *  been stopped.  The first iteration of a main search is never
+     *  aborted; a helper stops only when told to. */
+    private void checkBudget() {
+        if (_helper > 0) {
+            _aborted = _stop;
+        } else if (_abortable
+            && (_stop || System.nanoTime() > _deadline
+                || _nodeLimit > 0 && _nodes >= _nodeLimit)) {
+            _aborted = true;
+        }
+    }
+
+    /** Return the static value of the current position for the side to
+     *  move, from my EvalCache if it has it. */
+    private int evaluate() {
+        if (_evalCache == null) {
+            return _evaluator.evaluate(_board);
+        }
+        long key = _board.key();
+        long cached = _evalCache.probe(key);
+        if (cached != 0) {
+            return EvalCache.score(cached);
+        }
+        int v = _evaluator.evaluate(_board);
+        _evalCache.store(key, v);
+        return v;
+    }
+
+    /** Return my evaluation cache, or null if I have none. */
+    EvalCache evalCache() {
+        return _evalCache;
+    }
+
+    /** My settings. */
+    private final EngineConfig _config;
+    /** Table of results of earlier searches. */
+    private final TranspositionTable _table;
+    /** My helper number in a parallel search, or 0 for a main search. */
+    private final int _helper;
+    /** The static evaluation. */
+    private final Evaluator _evaluator = new Evaluator();
+    /** Cache of static evaluations, kept from search to search, or null
+     *  if EngineConfig.evalCacheKilobytes is 0. */
+    private final EvalCache _evalCache;
+    /** The position being searched. */
+    private final Board _board = new Board();
+    /** Move lists, one for each ply. */
+    private final int[][] _moves = new int[MAX_PLY][Board.MAX_MOVES];
+    /** Sort keys of the moves in _moves. */
+    private final int[][] _keys = new int[MAX_PLY][Board.MAX_MOVES];
+    /** Two killer moves for each ply. */
+    private final int[][] _killers = new int[MAX_PLY][2];
+    /** History scores, indexed by the from and to squares of a move
+     *  (the low 12 bits of its code). */
+    private final int[] _history = new int[1 << 12];
+    /** Numbers of beta cutoffs, and of those caused by the first move
+     *  tried, in the current search. */
+    private long _cutoffs, _firstCutoffs;
+    /** Numbers of null-move cutoffs, of late-move reductions, and of
+     *  reduced moves searched again, in the current search. */
+    private long _nullCutoffs, _reductions, _reductionResearches;
+    /** _afterNull[P] is true while the node P plies from the root is
+     *  reached by a null move. */
+    private final boolean[] _afterNull = new boolean[MAX_PLY];
+
+    /** Set by stop() to end the search early. */
+    private volatile boolean _stop;
+    /** Told of each completed iteration, or null. */
+    private volatile SearchStrategy.Listener _listener;
+    /** True when the current iteration has been abandoned. */
+    private boolean _aborted;
+    /** Depth of the iteration in progress. */
+    private int _iterationDepth;
+    /** True iff a main search or subtree may be cut short by stop() or
+     *  its budget: false during a main search's first iteration. */
+    private boolean _abortable;
+    /** Nodes visited so far by the current search. */
+    private long _nodes;
+    /** Depth and score of the last completed iteration. */
+    private int _depth, _score;
+    /** Score of the best move of the iteration just searched. */
+    private int _rootScore;
+    /** Numbers of PVS re-searches with a full window, and of aspiration
+     *  windows widened, in the current iteration. */
+    private int _researches, _aspirationResearches;
+    /** Times (from System.nanoTime) at which the current search started
+     *  and at which it must finish. */
+    private long _start, _deadline;
+    /** Number of nodes the current search may visit, or 0 for no
+     *  limit. */
+    private long _nodeLimit;
+
+}
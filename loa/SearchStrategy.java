@@ -0,0 +1,77 @@
+package loa;
+
+/** A way of choosing an automated player's moves by search, possibly
+ *  with several threads.  MachinePlayer uses one chosen by its
+ *  EngineConfig (see create).
+ *  @author Tara Calista
+ */
+interface SearchStrategy {
+
+    /** Told of each iteration of a search as it completes. */
+    interface Listener {
+        /** Note that an iteration to DEPTH plies has just completed,
+         *  choosing the move with code MOVE, with score SCORE for the side
+         *  to move, after NODES nodes and ELAPSED milliseconds in all.
+         *  Called on a searching thread, so it should return quickly. */
+        void iterationDone(int depth, int move, int score, long nodes,
+                           long elapsed);
+    }
+
+    /** Return a new SearchStrategy governed by CONFIG, with a
+     *  transposition table of the size it gives. */
+    static SearchStrategy create(EngineConfig config) {
+        TranspositionTable table =
+            new TranspositionTable(config.hashMegabytes);
+        if (config.forkJoin) {
+            return new ForkJoinSearch(config, table);
+        }
+        return new LazySmp(config, table);
+    }
+
+    /** Return the code of the best move found for the side to move in
+     *  BOARD, or Move.NONE if there is no legal move.  BOARD itself is
+     *  not modified. */
+    int bestMove(Board board);
+
+    /** As for bestMove(BOARD), but ignoring the time and node budgets,
+     *  so that the search runs until stop() is called or it reaches
+     *  EngineConfig.maxDepth.  Used to search on the opponent's time. */
+    int ponder(Board board);
+
+    /** Ask a search in progress (in another thread) to finish as soon as
+     *  possible. */
+    void stop();
+
+    /** Tell LISTENER of each iteration that my searches complete from now
+     *  on, or no one if LISTENER is null. */
+    void setListener(Listener listener);
+
+    /** Return the depth of the last completed iteration of the last
+     *  search. */
+    int depth();
+
+    /** Return the score, for the side to move, of the last completed
+     *  iteration of the last search. */
+    int score();
+
+    /** Return the total number of nodes visited by all threads in the
+     *  last search. */
+    long nodes();
+
+    /** Return the milliseconds elapsed since the last search began. */
+    long elapsed();
+
+    /** Return the transposition table. */
+    TranspositionTable table();
+
+    /** Report the counters of my transposition table and evaluation
+     *  caches through Reporter at message level LEVEL. */
+    void report(int level);
+
+    /** Return the number of threads searching. */
+    int threads();
+
+    /** Stop any threads of my own for good. */
+    void shutdown();
+
+}
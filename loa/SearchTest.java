@@ -0,0 +1,466 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static loa.Piece.*;
+
+/** Tests of the move search.
+ *  @author Tara Calista
+ */
+public class SearchTest {
+
+    /** Black to move and connect with d4-b2. */
+    static final String BLACK_WINS =
+        "--------/-------w/--------/-------w/---b----/--------/--------/"
+        + "bb------ b";
+
+    /** Return a configuration searching to DEPTH with no time limit. */
+    static EngineConfig fixedDepth(int depth) {
+        EngineConfig config = new EngineConfig();
+        config.moveTime = 0;
+        config.maxDepth = depth;
+        return config;
+    }
+
+    @Test
+    public void findsConnectingMove() {
+        Board board = new Board(BLACK_WINS);
+        Search search = new Search(fixedDepth(3));
+        int best = search.bestMove(board);
+        assertEquals(BLACK_WINS, board.position());
+        board.makeMove(best);
+        assertTrue(board.piecesContiguous(BP));
+        assertEquals(Search.WIN - 1, search.score());
+    }
+
+    @Test
+    public void fixedDepthIsRepeatable() {
+        Board board = new Board();
+        Search search = new Search(fixedDepth(3));
+        int first = search.bestMove(board);
+        long nodes = search.nodes();
+        Search fresh = new Search(fixedDepth(3));
+        assertEquals(first, fresh.bestMove(board));
+        assertEquals(nodes, fresh.nodes());
+        assertEquals(3, fresh.depth());
+        assertTrue(fresh.cutoffs() > 0);
+        assertTrue(fresh.firstMoveCutoffs() <= fresh.cutoffs());
+        assertTrue(board.isLegal(Move.decode(first)));
+        search.bestMove(board);
+        assertTrue(search.nodes() < nodes);
+    }
+
+    @Test
+    public void respectsNodeBudget() {
+        EngineConfig config = fixedDepth(Search.MAX_PLY - 1);
+        config.moveNodes = 20000;
+        Search search = new Search(config);
+        int best = search.bestMove(new Board());
+        assertTrue(best != Move.NONE);
+        assertTrue(search.nodes() < 2 * config.moveNodes);
+        assertTrue(search.depth() >= 1);
+    }
+
+    @Test
+    public void respectsTimeBudget() {
+        EngineConfig config = fixedDepth(Search.MAX_PLY - 1);
+        config.moveTime = 100;
+        Search search = new Search(config);
+        long start = System.currentTimeMillis();
+        search.bestMove(new Board());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void noMovesAfterGameOver() {
+        Board board = new Board(BLACK_WINS);
+        board.makeMove(Move.create("d4-b2", board));
+        assertEquals(Move.NONE, new Search(fixedDepth(2)).bestMove(board));
+    }
+
+    @Test
+    public void tableStoresAndReplaces() {
+        TranspositionTable table = new TranspositionTable(1);
+        Board board = new Board();
+        long key = board.key();
+        int move = Move.create("b1-d3", board).code();
+        assertEquals(0, table.probe(key));
+        table.store(key, move, 5, TranspositionTable.LOWER, -1234);
+        long data = table.probe(key);
+        assertEquals(move, TranspositionTable.move(data));
+        assertEquals(5, TranspositionTable.depth(data));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(data));
+        assertEquals(-1234, TranspositionTable.score(data));
+
+        long other = key ^ (1L << 40) ^ (1L << 8);
+        table.store(other, Move.NONE, 2, TranspositionTable.EXACT, 7);
+        assertEquals(5, TranspositionTable.depth(table.probe(key)));
+        assertEquals(7, TranspositionTable.score(table.probe(other)));
+
+        table.newSearch();
+        table.store(other, Move.NONE, 1, TranspositionTable.UPPER, 8);
+        assertEquals(8, TranspositionTable.score(table.probe(other)));
+        assertEquals(0, table.probe(key));
+        assertTrue(table.hits() > 0 && table.misses() > 0);
+        assertTrue(table.collisions() > 0);
+    }
+
+    @Test
+    public void lazySmpAgreesOnWins() {
+        EngineConfig config = fixedDepth(4);
+        config.threads = 3;
+        LazySmp search = new LazySmp(config, new TranspositionTable(4));
+        try {
+            Board board = new Board(BLACK_WINS);
+            int best = search.bestMove(board);
+            board.makeMove(best);
+            assertTrue(board.piecesContiguous(BP));
+            board = new Board();
+            best = search.bestMove(board);
+            assertTrue(board.isLegal(Move.decode(best)));
+            assertEquals(4, search.main().depth());
+            assertTrue(search.nodes() >= search.main().nodes());
+        } finally {
+            search.shutdown();
+        }
+    }
+
+    @Test
+    public void forkJoinMatchesSerialSearch() {
+        EngineConfig config = fixedDepth(4);
+        config.deterministic = true;
+        config.threads = 3;
+        ForkJoinSearch parallel =
+            new ForkJoinSearch(config, new TranspositionTable(4));
+        try {
+            List<Board> positions = Benchmark.samplePositions();
+            for (int i = 0; i < positions.size(); i += 397) {
+                Board board = positions.get(i);
+                Search serial = new Search(config);
+                int expected = serial.bestMove(board);
+                for (int k = 0; k < 2; k += 1) {
+                    assertEquals(board.position(), expected,
+                                 parallel.bestMove(board));
+                    assertEquals(serial.score(), parallel.score());
+                    assertEquals(serial.depth(), parallel.depth());
+                }
+            }
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void evalCacheStoresScores() {
+        EvalCache cache = new EvalCache(1);
+        long key = new Board().key();
+        assertEquals(0, cache.probe(key));
+        cache.store(key, -17);
+        assertEquals(-17, EvalCache.score(cache.probe(key)));
+        cache.store(key ^ (1L << 40), 0);
+        assertEquals(0, cache.probe(key));
+        assertEquals(0, EvalCache.score(cache.probe(key ^ (1L << 40))));
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void evalCacheDoesNotChangeSearch() {
+        EngineConfig config = fixedDepth(4);
+        config.evalCacheKilobytes = 0;
+        Search plain = new Search(config);
+        assertNull(plain.evalCache());
+        config = fixedDepth(4);
+        Search cached = new Search(config);
+        for (Board board : Benchmark.samplePositions().subList(0, 40)) {
+            assertEquals(plain.bestMove(board), cached.bestMove(board));
+            assertEquals(plain.score(), cached.score());
+            assertEquals(plain.nodes(), cached.nodes());
+        }
+        assertTrue(cached.evalCache().hits() > 0);
+    }
+
+    @Test
+    public void pvsAndAspirationKeepResults() {
+        EngineConfig plainConfig = fixedDepth(4);
+        plainConfig.deterministic = true;
+        plainConfig.pvs = false;
+        plainConfig.aspirationWindow = 0;
+        EngineConfig config = fixedDepth(4);
+        config.deterministic = true;
+        config.aspirationWindow = 5;
+        int researches = 0;
+        for (Board board : Benchmark.samplePositions().subList(0, 60)) {
+            Search plain = new Search(plainConfig);
+            Search search = new Search(config);
+            assertEquals(plain.bestMove(board), search.bestMove(board));
+            assertEquals(plain.score(), search.score());
+            researches += search.researches() + search.aspirationResearches();
+        }
+        assertTrue(researches > 0);
+    }
+
+    @Test
+    public void selectiveSearchFindsWinsAndSavesNodes() {
+        EngineConfig config = fixedDepth(4);
+        Board board = new Board(BLACK_WINS);
+        int best = new Search(config).bestMove(board);
+        board.makeMove(best);
+        assertTrue(board.piecesContiguous(BP));
+
+        EngineConfig full = fixedDepth(5);
+        full.nullMove = full.lateMoveReductions = false;
+        long fullNodes = 0, nodes = 0, reductions = 0;
+        for (Board position : Benchmark.samplePositions().subList(0, 20)) {
+            Search unreduced = new Search(full);
+            unreduced.bestMove(position);
+            fullNodes += unreduced.nodes();
+            Search selective = new Search(fixedDepth(5));
+            selective.bestMove(position);
+            nodes += selective.nodes();
+            reductions += selective.reductions();
+        }
+        assertTrue(nodes < fullNodes);
+        assertTrue(reductions > 0);
+    }
+
+    @Test
+    public void ponderHitAndMiss() throws InterruptedException {
+        EngineConfig config = new EngineConfig();
+        config.moveTime = 50;
+        config.ponder = true;
+        Game game = new Game(config);
+        Board board = game.getBoard();
+        MachinePlayer player = new MachinePlayer(BP, game);
+        try {
+            Move move = player.makeMove();
+            int reply = player.expectedReply(board, move.code());
+            assertNotEquals(Move.NONE, reply);
+            board.makeMove(move);
+            board.makeMove(reply);
+            move = player.makeMove();
+            assertEquals(1, player.ponderHits());
+            assertTrue(board.isLegal(move));
+
+            reply = player.expectedReply(board, move.code());
+            board.makeMove(move);
+            for (Move other : board) {
+                if (other.code() != reply) {
+                    board.makeMove(other);
+                    break;
+                }
+            }
+            long start = System.nanoTime();
+            move = player.makeMove();
+            assertEquals(1, player.ponderMisses());
+            assertTrue(board.isLegal(move));
+            assertTrue(System.nanoTime() - start < 2000000000L);
+        } finally {
+            player.release();
+        }
+        assertEquals(0, liveThreads("loa-ponder", 0));
+    }
+
+    /** Return the number of live threads named NAME. */
+    static int liveThreads(String name) {
+        int n = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().equals(name)) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Return the number of live threads named NAME once it is at most
+     *  LIMIT, or after waiting a few seconds for it to be. */
+    static int liveThreads(String name, int limit)
+        throws InterruptedException {
+        int n = liveThreads(name);
+        for (int k = 0; k < 100 && n > limit; k += 1) {
+            Thread.sleep(50);
+            n = liveThreads(name);
+        }
+        return n;
+    }
+
+    @Test
+    public void droppedPlayersReleaseThreads() throws Exception {
+        int before = liveThreads("loa-search-helper");
+        EngineConfig config = fixedDepth(1);
+        config.threads = 4;
+        StringBuilder commands = new StringBuilder();
+        for (int i = 0; i < 5; i += 1) {
+            commands.append("clear\nauto black\nauto white\nstart\n");
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        new Game(config, new BufferedReader(
+                     new StringReader(commands.toString())), out, out).play();
+        assertTrue(output.toString(), output.toString().contains(" wins."));
+        assertEquals(before, liveThreads("loa-search-helper", before));
+    }
+
+    @Test
+    public void solverProvesConnection() {
+        Board board = new Board(BLACK_WINS);
+        Solver solver = new Solver(64, 8);
+        assertEquals(Solver.PROVEN, solver.solve(board, 10000));
+        assertEquals(BLACK_WINS, board.position());
+        board.makeMove(solver.move());
+        assertTrue(board.piecesContiguous(BP));
+        board.retract();
+        assertEquals(Solver.PROVEN, solver.solve(board, 10000));
+        assertEquals(0, solver.nodes());
+        assertEquals(2, solver.proofs());
+        assertEquals(Solver.DISPROVEN, new Solver(64, 3).solve(new Board(),
+                                                                100000));
+    }
+
+    /** Positions, from Benchmark.samplePositions, in which the side to
+     *  move can force a win in more than one move. */
+    static final String[] DEEP_WINS = {
+        "--------/--------/-w------/-----w--/-w------/------b-/--------/"
+        + "-b------ b",
+        "--------/--------/b--b-w--/w------w/w--b----/--------/--------/"
+        + "ww------ b",
+        "--------/---w---w/--------/-b------/--------/----b---/--------/"
+        + "-------- w",
+        "--------/-w---b--/----w---/--b----w/--------/---w----/--------/"
+        + "-------- b",
+        "--------/----b-b-/-------w/w-------/-----wbw/--------/-----w-w/"
+        + "-------- b",
+        "-----w--/w----ww-/----b---/w--b--b-/-wb-----/----b---/-----wb-/"
+        + "---w---- b",
+        "---b--b-/--b-----/--------/----b---/---w--b-/--------/-wb-----/"
+        + "bw------ w",
+        "-----b--/w-------/----b--b/--------/------w-/--------/--------/"
+        + "-------- b",
+        "w----w--/-----w--/----b---/--------/---bw---/w-w-----/--------/"
+        + "---b-w-w b",
+    };
+
+    @Test
+    public void solverIsSoundWithSmallTable() {
+        Solver large = new Solver(4096, 16);
+        int[] replies = new int[Board.MAX_MOVES];
+        int proofs = 0;
+        for (String position : DEEP_WINS) {
+            Board board = new Board(position);
+            Solver small = new Solver(32, 16);
+            if (small.solve(board, 20000) != Solver.PROVEN) {
+                continue;
+            }
+            proofs += 1;
+            assertNotEquals(Solver.DISPROVEN, large.solve(board, 20000));
+            board.makeMove(small.move());
+            assertFalse(position, board.gameOver());
+            for (int i = 0, n = board.generateMoves(replies); i < n; i += 1) {
+                board.makeMove(replies[i]);
+                if (board.gameOver()) {
+                    assertEquals(position, board.turn(), board.winner());
+                } else {
+                    assertNotEquals(position, Solver.DISPROVEN,
+                                    large.solve(board, 20000));
+                }
+                board.retract();
+            }
+        }
+        assertTrue(proofs > DEEP_WINS.length / 2);
+    }
+
+    @Test
+    public void solverAgreesWithSearch() {
+        List<Board> positions = Benchmark.samplePositions();
+        Solver solver = new Solver(1024, 16);
+        int proofs = 0;
+        for (int i = 0; i < positions.size(); i += 400) {
+            Board board = positions.get(i);
+            EngineConfig config = fixedDepth(3);
+            config.deterministic = true;
+            Search search = new Search(config, new TranspositionTable(1));
+            search.bestMove(board);
+            int result = solver.solve(board, 20000);
+            if (search.score() >= Search.WIN - Search.MAX_PLY) {
+                assertNotEquals(Solver.DISPROVEN, result);
+            } else if (search.score() <= Search.MAX_PLY - Search.WIN) {
+                assertNotEquals(Solver.PROVEN, result);
+            }
+            if (result == Solver.PROVEN) {
+                proofs += 1;
+                assertTrue(board.isLegal(Move.decode(solver.move())));
+            }
+        }
+        assertTrue(proofs > 0);
+    }
+
+    @Test
+    public void mctsFindsWinAndReusesTree() {
+        EngineConfig config = fixedDepth(1);
+        config.moveNodes = 2000;
+        config.mctsNodes = 1 << 16;
+        Board board = new Board(BLACK_WINS);
+        MctsTree tree = new MctsTree(config);
+        board.makeMove(tree.bestMove(board, 0));
+        assertTrue(board.piecesContiguous(BP));
+        assertEquals(Move.NONE, tree.bestMove(board, 0));
+
+        board = new Board();
+        int first = tree.bestMove(board, 1);
+        assertFalse(tree.reused());
+        assertEquals(2000, tree.playouts());
+        assertEquals(first, new MctsTree(config).bestMove(board, 1));
+        board.makeMove(first);
+        int[] moves = new int[Board.MAX_MOVES];
+        board.generateMoves(moves);
+        board.makeMove(moves[0]);
+        int second = tree.bestMove(board, 2);
+        assertTrue(tree.reused());
+        assertTrue(tree.rootVisits() > tree.playouts());
+        assertTrue(board.isLegal(Move.decode(second)));
+
+        config.threads = 3;
+        config.deterministic = false;
+        tree = new MctsTree(config);
+        assertEquals(3, tree.workers());
+        int move = tree.bestMove(board, 3);
+        assertTrue(board.isLegal(Move.decode(move)));
+        assertTrue(tree.playouts() >= 2000);
+        assertEquals(tree.playouts(), tree.rootVisits());
+        tree.shutdown();
+        assertTrue(board.isLegal(Move.decode(tree.bestMove(board, 4))));
+        tree.shutdown();
+    }
+
+    @Test
+    public void mctsMovesWhenTreeFills() {
+        EngineConfig config = fixedDepth(1);
+        config.moveNodes = 1000;
+        config.mctsNodes = 2000;
+        MctsTree tree = new MctsTree(config);
+        Random random = new Random(5);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int game = 0; game < 3; game += 1) {
+            Board board = new Board();
+            tree.clear();
+            while (!board.gameOver()) {
+                int move = tree.bestMove(board, game);
+                assertTrue(board.isLegal(Move.decode(move)));
+                board.makeMove(move);
+                if (board.gameOver()) {
+                    break;
+                }
+                int n = board.generateMoves(moves);
+                board.makeMove(moves[random.nextInt(n)]);
+            }
+        }
+    }
+
+}
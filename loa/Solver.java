@@ -0,0 +1,358 @@
+package loa;
+
+import java.util.Arrays;
+
+/** A depth-first proof-number search (df-pn, after Nagai) that tries to
+ *  prove that the side to move can force a win.
+ *
+ *  Each position has a proof number, the least number of unsolved
+ *  positions that must be shown to be wins for the attacker (the side
+ *  to move at the root) to prove that the attacker wins, and a disproof
+ *  number, the least number that must be shown not to be to disprove it.
+ *  At the attacker's nodes, the proof number is the least of the
+ *  children's and the disproof number their sum; at the defender's, the
+ *  other way around.  The search repeatedly expands the most-proving
+ *  node, staying in a subtree until its numbers pass thresholds passed
+ *  down from above, so that it needs memory only for its table.
+ *
+ *  Positions with no legal move, positions repeated on the current
+ *  path, and positions MAXDEPTH plies from the root count as not won.
+ *  A disproof therefore means only that no forced win was found within
+ *  those limits, and, depending on the path, is kept only for the
+ *  current solve.  Proofs do not depend on the path and are kept from
+ *  solve to solve, so a proof found on one move is reused on the next.
+ *
+ *  The table is a long[] of two-entry buckets, each entry three longs:
+ *  the key (Board.key(), XORed with WHITE_KEY if white is the
+ *  attacker); USED, with the proof number in bits 32-62 and the
+ *  disproof number in the low 32 bits; and the proving move in the low
+ *  16 bits, with the solve number above them (0 for results that are
+ *  always valid).  A new position goes in the first entry of its bucket
+ *  that does not hold a proof, or else in the second.  A Solver must be
+ *  confined to one thread at a time.
+ *  @author Tara Calista
+ */
+class Solver {
+
+    /** Results of solve: the attacker wins by force; it was shown not to
+     *  (within the limits); or the node limit ran out first. */
+    static final int PROVEN = 1, DISPROVEN = -1, UNKNOWN = 0;
+
+    /** A proof or disproof number standing for infinity. */
+    static final int INFINITY = 1 << 30;
+
+    /** Flag marking the second long of a table entry as in use. */
+    private static final long USED = 1L << 63;
+
+    /** Number of longs in a table entry. */
+    private static final int ENTRY = 3;
+
+    /** Key mixed into the keys of positions when white is the
+     *  attacker, so that results for the two attackers differ. */
+    private static final long WHITE_KEY = 0x2f6e4f7d3a5b1c97L;
+
+    /** A Solver with a table of about KILOBYTES kilobytes that treats
+     *  positions MAXDEPTH plies from the root as not won. */
+    Solver(int kilobytes, int maxDepth) {
+        long buckets =
+            Math.max(1, ((long) kilobytes << 10) / (2 * ENTRY * 8));
+        int bits = 63 - Long.numberOfLeadingZeros(buckets);
+        bits = Math.min(bits, 24);
+        _table = new long[(2 * ENTRY) << bits];
+        _mask = (1 << bits) - 1;
+        _maxDepth = Math.max(1, Math.min(maxDepth, Search.MAX_PLY - 1));
+        _moves = new int[_maxDepth][Board.MAX_MOVES];
+        _childKeys = new long[_maxDepth][Board.MAX_MOVES];
+        _path = new long[_maxDepth];
+    }
+
+    /** Try, visiting at most NODELIMIT nodes, to prove that the side to
+     *  move in BOARD can force a win, and return PROVEN, DISPROVEN or
+     *  UNKNOWN.  After PROVEN, move() is the winning move.  BOARD itself
+     *  is not modified. */
+    int solve(Board board, long nodeLimit) {
+        _board.copyFrom(board);
+        _attacker = board.turn();
+        _solve = (_solve + 1) & 0xffffffffffffL;
+        if (_solve == 0) {
+            _solve = 1;
+        }
+        _nodes = 0;
+        _nodeLimit = nodeLimit;
+        _aborted = false;
+        _stop = false;
+        _move = Move.NONE;
+        if (board.gameOver()) {
+            return board.winner() == _attacker ? PROVEN : DISPROVEN;
+        }
+        long key = key();
+        int i = find(key);
+        if (i < 0 || proof(i) != 0) {
+            search(0, INFINITY, INFINITY);
+            i = find(key);
+        }
+        if (i >= 0 && proof(i) == 0) {
+            _move = (int) (_table[i + 2] & 0xffff);
+            _proofs += 1;
+            return PROVEN;
+        } else if (i >= 0 && disproof(i) == 0 && !_aborted) {
+            return DISPROVEN;
+        }
+        return UNKNOWN;
+    }
+
+    /** Number of plies from the start of the game during which the
+     *  number of groups does not by itself call for solving: each side
+     *  starts as two lines, so two groups, with no win anywhere near. */
+    static final int OPENING_PLIES = 10;
+
+    /** Return true iff CONFIG calls for trying to solve BOARD: the
+     *  solver is enabled, and at most CONFIG.solverPieces pieces remain
+     *  or, after the opening, the side to move has at most
+     *  CONFIG.solverGroups groups. */
+    static boolean worthTrying(Board board, EngineConfig config) {
+        if (!config.solver) {
+            return false;
+        }
+        return Long.bitCount(board.occupied()) <= config.solverPieces
+            || board.movesMade() >= OPENING_PLIES
+               && board.eulerNumber(board.turn()) <= config.solverGroups;
+    }
+
+    /** Return the winning move found by the last solve that returned
+     *  PROVEN, or Move.NONE. */
+    int move() {
+        return _move;
+    }
+
+    /** Ask a solve in progress (in another thread) to give up as soon
+     *  as possible, returning UNKNOWN unless it has already succeeded. */
+    void stop() {
+        _stop = true;
+    }
+
+    /** Return the number of nodes expanded by the last solve. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the number of solves that returned PROVEN. */
+    long proofs() {
+        return _proofs;
+    }
+
+    /** Expand the current position, PLY plies from the root, until its
+     *  proof number reaches PROOFLIMIT or its disproof number reaches
+     *  DISPROOFLIMIT, storing its numbers in the table.  A position at
+     *  the end of the game is settled at once, whatever the table has
+     *  kept of it, so that an evicted entry cannot make it look open. */
+    private void search(int ply, int proofLimit, int disproofLimit) {
+        _nodes += 1;
+        if (_nodes > _nodeLimit || _stop) {
+            _aborted = true;
+            return;
+        }
+        long key = key();
+        if (_board.gameOver()) {
+            boolean won = _board.winner() == _attacker;
+            store(key, won ? 0 : INFINITY, won ? INFINITY : 0, Move.NONE, 0);
+            return;
+        }
+        boolean attacking = _board.turn() == _attacker;
+        int[] moves = _moves[ply];
+        long[] keys = _childKeys[ply];
+        int n = ply + 1 >= _maxDepth ? 0 : _board.generateMoves(moves);
+        if (n == 0) {
+            store(key, INFINITY, 0, Move.NONE, _solve);
+            return;
+        }
+        _path[ply] = key;
+        for (int i = 0; i < n; i += 1) {
+            _board.makeMove(moves[i]);
+            keys[i] = key();
+            Piece winner = _board.winner();
+            if (winner != null) {
+                boolean won = winner == _attacker;
+                store(keys[i], won ? 0 : INFINITY, won ? INFINITY : 0,
+                      Move.NONE, 0);
+            }
+            _board.retract();
+        }
+
+        while (true) {
+            int proof, disproof, best = 0, second = INFINITY;
+            int bestProof = 0, bestDisproof = 0, provingMove = Move.NONE;
+            long sum = 0;
+            int least = INFINITY;
+            for (int i = 0; i < n; i += 1) {
+                int p, d, k;
+                if (onPath(keys[i], ply)) {
+                    p = INFINITY;
+                    d = 0;
+                } else if ((k = find(keys[i])) < 0) {
+                    p = d = 1;
+                } else {
+                    p = proof(k);
+                    d = disproof(k);
+                }
+                int mine = attacking ? p : d, theirs = attacking ? d : p;
+                if (mine < least) {
+                    second = least;
+                    least = mine;
+                    best = i;
+                    bestProof = p;
+                    bestDisproof = d;
+                } else if (mine < second) {
+                    second = mine;
+                }
+                sum = theirs == INFINITY || sum == INFINITY ? INFINITY
+                    : Math.min(sum + theirs, INFINITY - 1);
+                if (attacking && p == 0) {
+                    provingMove = moves[i];
+                }
+            }
+            if (attacking) {
+                proof = least;
+                disproof = (int) sum;
+            } else {
+                proof = (int) sum;
+                disproof = least;
+            }
+            if (proof >= proofLimit || disproof >= disproofLimit
+                || _aborted) {
+                store(key, proof, disproof, provingMove,
+                      proof == 0 ? 0 : _solve);
+                return;
+            }
+            int childProof, childDisproof;
+            if (attacking) {
+                childProof = Math.min(proofLimit, addLimit(second, 1));
+                childDisproof = addLimit(disproofLimit - disproof,
+                                         bestDisproof);
+            } else {
+                childProof = addLimit(proofLimit - proof, bestProof);
+                childDisproof = Math.min(disproofLimit, addLimit(second, 1));
+            }
+            _board.makeMove(moves[best]);
+            search(ply + 1, childProof, childDisproof);
+            _board.retract();
+        }
+    }
+
+    /** Return LIMIT + K, where LIMIT is a threshold that stays INFINITY
+     *  once it is INFINITY. */
+    private static int addLimit(int limit, int k) {
+        if (limit >= INFINITY - k || k >= INFINITY) {
+            return INFINITY;
+        }
+        return limit + k;
+    }
+
+    /** Return true iff KEY is the key of one of the positions on the
+     *  current path, at plies 0 through PLY. */
+    private boolean onPath(long key, int ply) {
+        for (int p = 0; p <= ply; p += 1) {
+            if (_path[p] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the key of the current position for the current
+     *  attacker. */
+    private long key() {
+        return _attacker == Piece.WP ? _board.key() ^ WHITE_KEY
+            : _board.key();
+    }
+
+    /** Return the index in _table of the valid entry for KEY, or -1 if
+     *  there is none.  Entries from earlier solves are valid only if
+     *  their solve number is 0. */
+    private int find(long key) {
+        int i = index(key);
+        for (int k = 0; k < 2; k += 1, i += ENTRY) {
+            if (_table[i] == key && _table[i + 1] != 0) {
+                long solve = _table[i + 2] >>> 16;
+                if (solve == 0 || solve == _solve) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Record PROOF and DISPROOF as the numbers of the position with KEY,
+     *  with MOVE its proving move, valid during solve number SOLVE, or
+     *  always if SOLVE is 0. */
+    private void store(long key, int proof, int disproof, int move,
+                       long solve) {
+        int bucket = index(key);
+        int slot = -1;
+        for (int k = 0, i = bucket; k < 2; k += 1, i += ENTRY) {
+            if (_table[i] == key) {
+                slot = i;
+                break;
+            } else if (slot < 0 && !(_table[i + 1] != 0 && proof(i) == 0)) {
+                slot = i;
+            }
+        }
+        if (slot < 0) {
+            slot = bucket + ENTRY;
+        }
+        _table[slot] = key;
+        _table[slot + 1] = USED | (long) proof << 32 | disproof;
+        _table[slot + 2] = solve << 16 | (move & 0xffff);
+    }
+
+    /** Return the proof number of the entry at index I of _table. */
+    private int proof(int i) {
+        return (int) (_table[i + 1] >>> 32) & Integer.MAX_VALUE;
+    }
+
+    /** Return the disproof number of the entry at index I of _table. */
+    private int disproof(int i) {
+        return (int) _table[i + 1];
+    }
+
+    /** Return the index in _table of the bucket for KEY. */
+    private int index(long key) {
+        return ((int) (key ^ key >>> 32) & _mask) * (2 * ENTRY);
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_table, 0);
+    }
+
+    /** Buckets of two entries of ENTRY longs. */
+    private final long[] _table;
+    /** Mask selecting a bucket number from a hash. */
+    private final int _mask;
+    /** Depth at which positions count as not won. */
+    private final int _maxDepth;
+    /** The position being solved. */
+    private final Board _board = new Board();
+    /** Move lists and the keys of the positions they lead to, for each
+     *  ply. */
+    private final int[][] _moves;
+    /** Keys of the positions after each move in _moves. */
+    private final long[][] _childKeys;
+    /** Keys of the positions on the current path, by ply. */
+    private final long[] _path;
+    /** The side trying to win. */
+    private Piece _attacker;
+    /** Number of the current solve (never 0). */
+    private long _solve;
+    /** Nodes expanded, and the limit on them, in the current solve. */
+    private long _nodes, _nodeLimit;
+    /** True if the current solve ran out of nodes or was stopped. */
+    private boolean _aborted;
+    /** Set by stop() to end the current solve. */
+    private volatile boolean _stop;
+    /** The winning move found by the last proof. */
+    private int _move;
+    /** Number of solves that found proofs. */
+    private long _proofs;
+
+}
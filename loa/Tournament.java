@@ -0,0 +1,490 @@
+package loa;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+/** A match between two engine configurations, played without a Game or
+ *  any input, with its games running concurrently.  Run as
+ *      java loa.Tournament [--games=N] [--seed=S] [--concurrency=C]
+ *                          [--elo0=E0] [--elo1=E1]
+ *                          [--test=OPTIONS] [--base=OPTIONS]
+ *                          [--record=FILE]
+ *  to play N games (default 100) between the engines described by the
+ *  two OPTIONS, C at a time (by default, one per processor).  Each
+ *  OPTIONS is a list of loa.Main's engine options (e.g.,
+ *  "--nodes=20000 --solver=0"), optionally with the word mcts to play
+ *  with an MctsPlayer's search rather than a MachinePlayer's.
+ *
+ *  Each pair of games starts from the same OPENING_PLIES random moves,
+ *  chosen by a Random seeded with S plus the pair's number, and the test
+ *  engine takes each side once.  Games are drawn after MAX_PLIES plies.
+ *  At the end, the match prints the results, each engine's speed and
+ *  time per move, the Elo difference with its 95% confidence interval,
+ *  and the verdict of a sequential probability ratio test of the
+ *  hypotheses that the test engine is E0 (default 0) and E1 (default
+ *  5) Elo stronger than the base.  The match stops early once that
+ *  test decides, so that a clear result does not wait for N games.
+ *  With --record, every game is appended to the game record file FILE
+ *  (see GameRecords), with its opening seed.
+ *  @author Tara Calista
+ */
+class Tournament {
+
+    /** Number of random moves at the start of each game. */
+    static final int OPENING_PLIES = 4;
+
+    /** Number of plies after which a game is drawn. */
+    static final int MAX_PLIES = 300;
+
+    /** Probabilities of accepting the hypothesis that the test engine
+     *  is elo1 stronger when it is elo0 stronger, and the reverse. */
+    static final double ALPHA = 0.05, BETA = 0.05;
+
+    /** Play the match described by ARGS, as above. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games=(\\d+){0,1} --seed=(-?\\d+){0,1} "
+                            + "--concurrency=(\\d+){0,1} "
+                            + "--elo0=(-?\\d+){0,1} --elo1=(-?\\d+){0,1} "
+                            + "--test=(.*){0,1} --base=(.*){0,1} "
+                            + "--record=(.+){0,1}", args);
+        if (!options.ok()) {
+            usage();
+        }
+        int games = options.contains("--games")
+            ? options.getInt("--games") : 100;
+        long seed = options.contains("--seed")
+            ? options.getLong("--seed") : 0;
+        int concurrency = options.contains("--concurrency")
+            ? Math.max(1, options.getInt("--concurrency"))
+            : Runtime.getRuntime().availableProcessors();
+        double elo0 = options.contains("--elo0")
+            ? options.getInt("--elo0") : 0,
+            elo1 = options.contains("--elo1") ? options.getInt("--elo1") : 5;
+        Tournament match =
+            new Tournament(entrant(options.getLast("--test")),
+                           entrant(options.getLast("--base")), elo0, elo1);
+        GameRecorder recorder = null;
+        try {
+            if (options.contains("--record")) {
+                recorder =
+                    new GameRecorder(Path.of(options.getLast("--record")));
+                match.setRecorder(recorder);
+            }
+            match.play(games, seed, concurrency);
+            if (recorder != null) {
+                recorder.close();
+            }
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+        match.report(System.out);
+    }
+
+    /** Print a description of the command line and exit. */
+    static void usage() {
+        System.err.println("Usage: java loa.Tournament [--games=N] "
+                           + "[--seed=S] [--concurrency=C] [--elo0=E0] "
+                           + "[--elo1=E1] [--test=OPTIONS] "
+                           + "[--base=OPTIONS] [--record=FILE]");
+        System.exit(1);
+    }
+
+    /** Return the Entrant described by OPTIONS, which may be null (for
+     *  the default MachinePlayer settings). */
+    static Entrant entrant(String options) {
+        String description = options == null ? "" : options.trim();
+        boolean mcts = false;
+        List<String> words = new ArrayList<>();
+        for (String word : description.split("\\s+")) {
+            if (word.equals("mcts")) {
+                mcts = true;
+            } else if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        CommandArgs engine =
+            new CommandArgs(Main.ENGINE_OPTIONS,
+                            words.toArray(new String[0]));
+        if (!engine.ok()) {
+            usage();
+        }
+        return new Entrant(description.isEmpty() ? "(defaults)" : description,
+                           Main.engineConfig(engine), mcts);
+    }
+
+    /** A match between the engines TEST and BASE, testing the hypotheses
+     *  that TEST is ELO0 or ELO1 Elo stronger. */
+    Tournament(Entrant test, Entrant base, double elo0, double elo1) {
+        _test = test;
+        _base = base;
+        _elo0 = elo0;
+        _elo1 = elo1;
+    }
+
+    /** Append each game played from now on to RECORDER, or to nothing
+     *  if RECORDER is null. */
+    void setRecorder(GameRecorder recorder) {
+        _recorder = recorder;
+    }
+
+    /** Play up to GAMES games, CONCURRENCY at a time, with openings
+     *  seeded from SEED, stopping early if the SPRT decides. */
+    void play(int games, long seed, int concurrency) {
+        _start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int g = 0; g < games; g += 1) {
+                int game = g;
+                results.add(pool.submit(() -> playGame(game, seed)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException("tournament game failed", excp);
+        } finally {
+            pool.shutdown();
+        }
+        _elapsed = System.currentTimeMillis() - _start;
+    }
+
+    /** Play game number GAME of the match, with openings seeded from
+     *  SEED, unless the SPRT has already decided.  The test engine plays
+     *  black in even-numbered games. */
+    private void playGame(int game, long seed) {
+        if (sprt() != 0) {
+            return;
+        }
+        Piece testSide = game % 2 == 0 ? Piece.BP : Piece.WP;
+        Entrant black = testSide == Piece.BP ? _test : _base,
+            white = testSide == Piece.BP ? _base : _test;
+        int[] played = playGame(black, white, new Random(seed + game / 2),
+                                seed ^ game);
+        Piece winner = BookBuilder.winner(played);
+        if (_recorder != null) {
+            try {
+                _recorder.write(seed + game / 2, black.kind(), white.kind(),
+                                played, played.length, winner);
+            } catch (IOException excp) {
+                throw new IllegalStateException("cannot record game", excp);
+            }
+        }
+        int result = winner == null ? 1 : winner == testSide ? 2 : 0;
+        record(result);
+        Reporter.debug(1, "game %d: %s after %d plies", game,
+                       result == 2 ? "test wins"
+                       : result == 0 ? "base wins" : "draw",
+                       played.length);
+    }
+
+    /** Return the move codes of a game in which OPENING_PLIES random
+     *  moves chosen with RANDOM are followed by the moves of BLACK and
+     *  WHITE, whose own random choices are seeded from SEED, ending when
+     *  it is won, when the side to move has no move, or after MAX_PLIES
+     *  plies.  Each entrant's statistics take in its moves.  This is the
+     *  game loop of every match: Tournament's, Benchmark's self-play
+     *  matches, and BookBuilder's self-play games. */
+    static int[] playGame(Entrant black, Entrant white, Random random,
+                          long seed) {
+        Board board = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        int[] played = new int[MAX_PLIES];
+        for (int i = 0; i < OPENING_PLIES && !board.gameOver(); i += 1) {
+            int n = board.generateMoves(moves);
+            played[board.movesMade()] = moves[random.nextInt(n)];
+            board.makeMove(played[board.movesMade()]);
+        }
+        Side[] sides = { new Side(black, seed), new Side(white, ~seed) };
+        try {
+            while (!board.gameOver() && board.movesMade() < MAX_PLIES) {
+                int move = sides[board.turn().ordinal()].move(board);
+                if (move == Move.NONE) {
+                    break;
+                }
+                played[board.movesMade()] = move;
+                board.makeMove(move);
+            }
+        } finally {
+            for (Side side : sides) {
+                side.shutdown();
+            }
+        }
+        black.add(sides[Piece.BP.ordinal()]);
+        white.add(sides[Piece.WP.ordinal()]);
+        return Arrays.copyOf(played, board.movesMade());
+    }
+
+    /** Add the result of a game in which the test engine scored RESULT
+     *  half-points. */
+    private synchronized void record(int result) {
+        if (result == 2) {
+            _wins += 1;
+        } else if (result == 0) {
+            _losses += 1;
+        } else {
+            _draws += 1;
+        }
+    }
+
+    /** Return the number of games won by the test engine. */
+    synchronized int wins() {
+        return _wins;
+    }
+
+    /** Return the number of games lost by the test engine. */
+    synchronized int losses() {
+        return _losses;
+    }
+
+    /** Return the number of games drawn. */
+    synchronized int draws() {
+        return _draws;
+    }
+
+    /** Return the number of games played. */
+    synchronized int games() {
+        return _wins + _losses + _draws;
+    }
+
+    /** Return the test engine's mean score per game, from 0 to 1. */
+    synchronized double score() {
+        return games() == 0 ? 0.5 : (_wins + 0.5 * _draws) / games();
+    }
+
+    /** Return the variance of the test engine's score per game. */
+    synchronized double variance() {
+        int n = games();
+        if (n == 0) {
+            return 0;
+        }
+        double x = score();
+        return (_wins * (1 - x) * (1 - x) + _losses * x * x
+                + _draws * (0.5 - x) * (0.5 - x)) / n;
+    }
+
+    /** Return the log-likelihood ratio of the hypotheses that the test
+     *  engine is _elo1 and _elo0 Elo stronger, from the normal
+     *  approximation to the distribution of its mean score.  The mean
+     *  and variance are estimated with one extra win and one extra loss,
+     *  so that a run of identical results does not have zero variance. */
+    synchronized double llr() {
+        int n = games() + 2;
+        double x = (_wins + 1 + 0.5 * _draws) / n;
+        double variance = ((_wins + 1) * (1 - x) * (1 - x)
+                           + (_losses + 1) * x * x
+                           + _draws * (0.5 - x) * (0.5 - x)) / n;
+        double s0 = expectedScore(_elo0), s1 = expectedScore(_elo1);
+        return games() * (s1 - s0) * (2 * x - s0 - s1) / (2 * variance);
+    }
+
+    /** Return 1 if the SPRT accepts the hypothesis that the test engine
+     *  is _elo1 Elo stronger, -1 if it accepts _elo0, and 0 if it needs
+     *  more games. */
+    synchronized int sprt() {
+        double llr = llr();
+        if (llr >= Math.log((1 - BETA) / ALPHA)) {
+            return 1;
+        } else if (llr <= Math.log(BETA / (1 - ALPHA))) {
+            return -1;
+        }
+        return 0;
+    }
+
+    /** Return the Elo rating difference implied by the fraction SCORE of
+     *  the points won. */
+    static double elo(double score) {
+        score = Math.min(Math.max(score, 1e-3), 1 - 1e-3);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /** Return the expected score of a player ELO Elo stronger than its
+     *  opponent. */
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /** Print the results on OUT. */
+    synchronized void report(PrintStream out) {
+        int n = games();
+        double margin = n == 0 ? 0 : 1.96 * Math.sqrt(variance() / n);
+        double elo = elo(score());
+        double low = elo(Math.max(0, score() - margin)),
+            high = elo(Math.min(1, score() + margin));
+        out.printf("test: %s%nbase: %s%n", _test.name(), _base.name());
+        out.printf("+%d -%d =%d in %d games (%.1f s), score %.1f%%, "
+                   + "Elo %+.0f (95%%: %+.0f to %+.0f)%n", _wins, _losses,
+                   _draws, n, _elapsed / 1000.0, 100 * score(), elo, low,
+                   high);
+        for (Entrant entrant : new Entrant[] { _test, _base }) {
+            out.printf("%s: %.0f nodes/s, %.1f ms/move%n",
+                       entrant == _test ? "test" : "base",
+                       entrant.nodesPerSecond(), entrant.msPerMove());
+        }
+        String verdict = sprt() > 0 ? "H1 accepted"
+            : sprt() < 0 ? "H0 accepted" : "inconclusive";
+        out.printf("SPRT elo0=%.0f elo1=%.0f: LLR %.2f (%.2f, %.2f), %s%n",
+                   _elo0, _elo1, llr(), Math.log(BETA / (1 - ALPHA)),
+                   Math.log((1 - BETA) / ALPHA), verdict);
+    }
+
+    /** One of the two engines in a match, with statistics accumulated
+     *  over all its games, which may be played concurrently. */
+    static class Entrant {
+
+        /** An entrant described by NAME that plays with the settings in
+         *  CONFIG, by Monte Carlo tree search iff MCTS. */
+        Entrant(String name, EngineConfig config, boolean mcts) {
+            _name = name;
+            _config = config;
+            _mcts = mcts;
+        }
+
+        /** Return my description. */
+        String name() {
+            return _name;
+        }
+
+        /** Return my kind of player, as recorded by GameRecorder. */
+        int kind() {
+            return _mcts ? GameRecords.MCTS : GameRecords.SEARCH;
+        }
+
+        /** Return the nodes (playouts, for MCTS) per second of my
+         *  searches. */
+        synchronized double nodesPerSecond() {
+            return _searchNanos == 0 ? 0 : _nodes * 1e9 / _searchNanos;
+        }
+
+        /** Return the mean time I took per move, in milliseconds. */
+        synchronized double msPerMove() {
+            return _moves == 0 ? 0 : _nanos / 1e6 / _moves;
+        }
+
+        /** Add the statistics of SIDE, which played one game for me. */
+        synchronized void add(Side side) {
+            _moves += side._moves;
+            _nodes += side._nodes;
+            _nanos += side._nanos;
+            _searchNanos += side._searchNanos;
+        }
+
+        /** My description. */
+        private final String _name;
+        /** My settings. */
+        private final EngineConfig _config;
+        /** True if I play by Monte Carlo tree search. */
+        private final boolean _mcts;
+        /** Moves made, nodes searched, and time taken for all moves and
+         *  for those that were searched, in nanoseconds. */
+        private long _moves, _nodes, _nanos, _searchNanos;
+    }
+
+    /** An Entrant playing one game: like a MachinePlayer, it plays from
+     *  the opening book, then by the Solver if it can prove a win, and
+     *  otherwise searches; like an MctsPlayer, it plays from the opening
+     *  book and otherwise searches its Monte Carlo tree. */
+    private static class Side {
+
+        /** A side playing for ENTRANT, its random choices seeded by
+         *  SEED. */
+        Side(Entrant entrant, long seed) {
+            _config = entrant._config;
+            _random = new Random(seed);
+            if (entrant._mcts) {
+                _tree = new MctsTree(_config);
+                _search = null;
+            } else {
+                _tree = null;
+                _search = SearchStrategy.create(_config);
+            }
+        }
+
+        /** Return my move in the position on BOARD, or Move.NONE if
+         *  there is none. */
+        int move(Board board) {
+            long start = System.nanoTime();
+            int move = Move.NONE;
+            if (_config.book != null) {
+                move = _config.book.move(board, _config.deterministic
+                                         ? null : _random::nextInt);
+            }
+            if (move == Move.NONE && _tree == null
+                && Solver.worthTrying(board, _config)) {
+                if (_solver == null) {
+                    _solver = new Solver(_config.solverKilobytes,
+                                         _config.solverDepth);
+                }
+                if (_solver.solve(board, _config.solverNodes)
+                    == Solver.PROVEN) {
+                    move = _solver.move();
+                }
+            }
+            if (move == Move.NONE) {
+                long searchStart = System.nanoTime();
+                if (_tree != null) {
+                    move = _tree.bestMove(board, _random.nextLong());
+                    _nodes += _tree.playouts();
+                } else {
+                    move = _search.bestMove(board);
+                    _nodes += _search.nodes();
+                }
+                _searchNanos += System.nanoTime() - searchStart;
+            }
+            _moves += 1;
+            _nanos += System.nanoTime() - start;
+            return move;
+        }
+
+        /** Release my search's or my tree's threads, if any. */
+        void shutdown() {
+            if (_search != null) {
+                _search.shutdown();
+            }
+            if (_tree != null) {
+                _tree.shutdown();
+            }
+        }
+
+        /** My settings. */
+        private final EngineConfig _config;
+        /** Source of my random choices. */
+        private final Random _random;
+        /** My search, if I am not playing by MCTS. */
+        private final SearchStrategy _search;
+        /** My Monte Carlo tree, if I am playing by MCTS. */
+        private final MctsTree _tree;
+        /** My solver, created when first needed. */
+        private Solver _solver;
+        /** Moves made, nodes searched, and time taken for all moves and
+         *  for those that were searched, in nanoseconds. */
+        private long _moves, _nodes, _nanos, _searchNanos;
+    }
+
+    /** The engines playing. */
+    private final Entrant _test, _base;
+    /** The hypotheses tested: the test engine is _elo0 or _elo1 Elo
+     *  stronger than the base. */
+    private final double _elo0, _elo1;
+    /** Numbers of games won, lost and drawn by the test engine. */
+    private int _wins, _losses, _draws;
+    /** Time at which the match started, and its duration, in
+     *  milliseconds. */
+    private long _start, _elapsed;
+    /** Where games are recorded, or null. */
+    private volatile GameRecorder _recorder;
+
+}
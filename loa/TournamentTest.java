@@ -0,0 +1,44 @@
+package loa;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Tournament.
+ *  @author Tara Calista
+ */
+public class TournamentTest {
+
+    @Test
+    public void eloAndExpectedScore() {
+        assertEquals(0.5, Tournament.expectedScore(0), 1e-9);
+        assertEquals(1.0, Tournament.expectedScore(200)
+                     + Tournament.expectedScore(-200), 1e-9);
+        assertEquals(200, Tournament.elo(Tournament.expectedScore(200)),
+                     1e-6);
+    }
+
+    @Test
+    public void equalEnginesSplitEachPair() {
+        String options = "--time=0 --nodes=300 --solver=0";
+        Tournament match =
+            new Tournament(Tournament.entrant(options),
+                           Tournament.entrant(options), 0, 5);
+        match.play(6, 1, 2);
+        assertEquals(6, match.games());
+        assertEquals(match.wins(), match.losses());
+        assertEquals(0, match.sprt());
+    }
+
+    @Test
+    public void sprtStopsClearMatches() {
+        Tournament match =
+            new Tournament(Tournament.entrant("--time=0 --nodes=3000"),
+                           Tournament.entrant("--time=0 --nodes=10 "
+                                              + "--solver=0"), 0, 300);
+        match.play(60, 2, 1);
+        assertEquals(1, match.sprt());
+        assertTrue(match.games() < 60);
+        assertTrue(match.wins() > match.losses());
+    }
+
+}
@@ -0,0 +1,155 @@
+package loa;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A fixed-size table of search results, indexed by Board.key().
+ *
+ *  The table is a single long[] of two-entry buckets.  In each bucket,
+ *  the first entry is replaced only by results from deeper (or equally
+ *  deep) searches or when it is left over from an earlier move; the
+ *  second is always replaced.  Each entry is two longs: the position key
+ *  XORed with the data word, and the data word, which packs
+ *      bits 0-15   the code of the best move (Move.NONE if unknown)
+ *      bits 16-23  the depth searched
+ *      bits 24-25  the bound type (EXACT, LOWER or UPPER)
+ *      bits 26-31  the age (see newSearch)
+ *      bits 32-63  the score
+ *  Writers store the two words without locking, so a concurrent reader
+ *  may see the halves of different entries.  Such torn entries fail the
+ *  key check, which recomputes key XOR data, and are treated as misses.
+ *  The table may therefore be shared by any number of searching threads.
+ *  @author Tara Calista
+ */
+class TranspositionTable {
+
+    /** Bound types: the stored score is exact, a lower bound, or an
+     *  upper bound on the true value. */
+    static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /** A table using approximately MEGABYTES megabytes (at least one
+     *  bucket). */
+    TranspositionTable(int megabytes) {
+        long buckets = Math.max(1, (long) megabytes << 20 >> 5);
+        int bits = 63 - Long.numberOfLeadingZeros(buckets);
+        bits = Math.min(bits, 26);
+        _table = new long[4 << bits];
+        _mask = (1 << bits) - 1;
+    }
+
+    /** Return the data word stored for KEY, or 0 if there is none. */
+    long probe(long key) {
+        int i = index(key);
+        for (int k = 0; k < 2; k += 1, i += 2) {
+            long data = _table[i + 1];
+            if ((_table[i] ^ data) == key && data != 0) {
+                _hits.increment();
+                return data;
+            }
+        }
+        if (_table[index(key) + 1] != 0) {
+            _collisions.increment();
+        }
+        _misses.increment();
+        return 0;
+    }
+
+    /** Record that the position with key KEY, searched to DEPTH, has the
+     *  score SCORE of bound type BOUND, and best move MOVE. */
+    void store(long key, int move, int depth, int bound, int score) {
+        int i = index(key);
+        long data = (move & 0xffffL) | (long) depth << 16
+            | (long) bound << 24 | (long) _age << 26 | (long) score << 32;
+        long old = _table[i + 1];
+        boolean same = (_table[i] ^ old) == key;
+        if (old == 0 || same || depth(old) <= depth || age(old) != _age) {
+            if (same && move == Move.NONE) {
+                data |= move(old);
+            }
+            _table[i] = key ^ data;
+            _table[i + 1] = data;
+        } else {
+            _table[i + 2] = key ^ data;
+            _table[i + 3] = data;
+        }
+    }
+
+    /** Start a new search, so that entries stored before now are replaced
+     *  in preference to newer ones. */
+    void newSearch() {
+        _age = (_age + 1) & 0x3f;
+    }
+
+    /** Remove all entries and reset the counters. */
+    void clear() {
+        Arrays.fill(_table, 0);
+        _hits.reset();
+        _misses.reset();
+        _collisions.reset();
+    }
+
+    /** Return the best move recorded in the data word DATA. */
+    static int move(long data) {
+        return (int) (data & 0xffff);
+    }
+
+    /** Return the depth recorded in the data word DATA. */
+    static int depth(long data) {
+        return (int) (data >>> 16) & 0xff;
+    }
+
+    /** Return the bound type recorded in the data word DATA. */
+    static int bound(long data) {
+        return (int) (data >>> 24) & 3;
+    }
+
+    /** Return the score recorded in the data word DATA. */
+    static int score(long data) {
+        return (int) (data >> 32);
+    }
+
+    /** Return the age recorded in the data word DATA. */
+    private static int age(long data) {
+        return (int) (data >>> 26) & 0x3f;
+    }
+
+    /** Return the number of probes that found their position. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of probes that did not find their position. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the number of misses whose bucket held another position. */
+    long collisions() {
+        return _collisions.sum();
+    }
+
+    /** Report my counters through Reporter at message level LEVEL. */
+    void report(int level) {
+        long probes = hits() + misses();
+        Reporter.debug(level, "tt: %d probes, %d hits (%.1f%%), %d misses, "
+                       + "%d collisions", probes, hits(),
+                       100.0 * hits() / Math.max(1, probes), misses(),
+                       collisions());
+    }
+
+    /** Return the index in _table of the bucket for KEY. */
+    private int index(long key) {
+        return ((int) (key ^ key >>> 32) & _mask) << 2;
+    }
+
+    /** Two-entry buckets of two longs each. */
+    private final long[] _table;
+    /** Mask selecting a bucket number from a hash. */
+    private final int _mask;
+    /** Current age. */
+    private volatile int _age;
+    /** Probe counters. */
+    private final LongAdder _hits = new LongAdder(), _misses = new LongAdder(),
+        _collisions = new LongAdder();
+
+}
@@ -14,7 +14,11 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(UnitTest.class, BoardTest.class);
+        textui.runClasses(UnitTest.class, BoardTest.class,
+                          ConcurrencyTest.class, PerftTest.class,
+                          SearchTest.class, OpeningBookTest.class,
+                          TournamentTest.class, ProtocolTest.class,
+                          GameServerTest.class, GameRecordsTest.class);
     }
 
     /** A dummy test to avoid complaint. */